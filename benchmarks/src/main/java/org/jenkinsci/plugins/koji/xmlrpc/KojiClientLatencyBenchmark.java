@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of KojiClient calls against RecordedKojiHub: pooling, rate limiting, circuit breaker, HTTP
+ * transport, parsing and mapping of the response. Latest build caching is switched off, so every call reaches the hub.
+ *
+ * Run with -t N to measure N concurrent callers, and with -prof gc to see allocation per call.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KojiClientLatencyBenchmark {
+
+    /**
+     * Hub with a small tag, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Hub {
+        RecordedKojiHub hub;
+        KojiClient koji;
+
+        @Setup
+        public void start() throws IOException {
+            hub = startHub(1);
+            koji = KojiClient.getKojiClient(hub.getURL());
+        }
+
+        @TearDown
+        public void stop() {
+            stopHub(hub);
+        }
+    }
+
+    /**
+     * Hub with a tag of taggedBuilds builds.
+     */
+    @State(Scope.Benchmark)
+    public static class TaggedHub {
+        @Param({"100", "100000"})
+        public int taggedBuilds;
+
+        RecordedKojiHub hub;
+        KojiClient koji;
+        KojiClient.BuildParams buildParams;
+
+        @Setup
+        public void start() throws IOException {
+            hub = startHub(taggedBuilds);
+            koji = KojiClient.getKojiClient(hub.getURL());
+            buildParams = new KojiClient.BuildParamsBuilder().setTag(KojiResponses.TAG).build();
+        }
+
+        @TearDown
+        public void stop() {
+            stopHub(hub);
+        }
+    }
+
+    static RecordedKojiHub startHub(int taggedBuilds) throws IOException {
+        KojiBuildCache.getInstance().setLatestTtlMillis(0);
+        return RecordedKojiHub.start(KojiResponses.load(taggedBuilds));
+    }
+
+    static void stopHub(RecordedKojiHub hub) {
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Benchmark
+    public String hello(Hub hub) {
+        return hub.koji.sayHello();
+    }
+
+    @Benchmark
+    public KojiBuild getLatestBuilds(Hub hub) throws XmlRpcException {
+        return hub.koji.getLatestBuilds(KojiResponses.TAG, KojiResponses.PKG);
+    }
+
+    @Benchmark
+    public int listTaggedStreamed(TaggedHub hub, final Blackhole blackhole) throws XmlRpcException {
+        return hub.koji.listTaggedBuilds(hub.buildParams, new KojiClient.BuildHandler() {
+            public void handleBuild(KojiBuild build) {
+                blackhole.consume(build);
+            }
+        });
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5)
+    public int listTaggedCollected(TaggedHub hub) throws XmlRpcException {
+        return hub.koji.listTaggedBuilds(hub.buildParams).size();
+    }
+}
@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Responses served by RecordedKojiHub, keyed by XML-RPC method name.
+ *
+ * By default the responses are generated to look like those of a real hub: builds with the same fields, value types
+ * and None values as returned by listTagged / getLatestBuilds of a Maven tag. Responses recorded from a real hub, e.g.
+ * copied out of the Koji wire log, can be used instead by pointing the koji.recordings system property to a directory
+ * with one METHOD.xml file per method.
+ */
+public class KojiResponses {
+
+    public static final String TAG = "mead-import-maven-all";
+    public static final String PKG = "classworlds-classworlds";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private KojiResponses() {
+    }
+
+    /**
+     * Responses of a hub whose tag holds a given number of builds.
+     * @param taggedBuilds Size of the listTagged response.
+     */
+    public static Map<String, byte[]> load(int taggedBuilds) throws IOException {
+        String recordings = System.getProperty("koji.recordings");
+        if (recordings != null) {
+            return loadRecordings(new File(recordings));
+        }
+
+        Map<String, byte[]> responses = new HashMap<String, byte[]>();
+        responses.put("hello", response("<string>Hello World!</string>"));
+        responses.put("getLastEvent", response("<struct>" + member("id", "<int>100000</int>")
+                + member("ts", "<double>1413900000.0</double>") + "</struct>"));
+        responses.put("getBuild", response(build(1)));
+        responses.put("getLatestBuilds", listTagged(1));
+        responses.put("listTagged", listTagged(taggedBuilds));
+        return responses;
+    }
+
+    /**
+     * Reads METHOD.xml files of a directory.
+     */
+    public static Map<String, byte[]> loadRecordings(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("No recordings in " + directory);
+        }
+
+        Map<String, byte[]> responses = new HashMap<String, byte[]>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".xml")) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    responses.put(name.substring(0, name.length() - 4), IOUtils.toByteArray(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Response to listTagged with a number of builds.
+     */
+    public static byte[] listTagged(int builds) {
+        StringBuilder array = new StringBuilder(builds * 1600 + 100);
+        array.append("<array><data>\n");
+        for (int i = 1; i <= builds; i++) {
+            array.append("<value>").append(build(i)).append("</value>\n");
+        }
+        array.append("</data></array>");
+        return response(array.toString());
+    }
+
+    /**
+     * Build struct as returned by listTagged, with a unique version per build.
+     */
+    static String build(int id) {
+        String version = "1." + (id / 1000) + "." + (id % 1000);
+        String release = String.valueOf(id % 7 + 1);
+        String nvr = PKG + "-" + version + "-" + release;
+        return "<struct>"
+                + member("build_id", "<int>" + id + "</int>")
+                + member("id", "<int>" + id + "</int>")
+                + member("package_id", "<int>" + (id % 5000 + 1) + "</int>")
+                + member("package_name", "<string>" + PKG + "</string>")
+                + member("name", "<string>" + PKG + "</string>")
+                + member("version", "<string>" + version + "</string>")
+                + member("release", "<string>" + release + "</string>")
+                + member("epoch", "<nil/>")
+                + member("nvr", "<string>" + nvr + "</string>")
+                + member("state", "<int>1</int>")
+                + member("task_id", "<int>" + (2000000 + id) + "</int>")
+                + member("owner_id", "<int>" + (id % 40 + 1) + "</int>")
+                + member("owner_name", "<string>builder" + (id % 40 + 1) + "</string>")
+                + member("volume_id", "<int>0</int>")
+                + member("volume_name", "<string>DEFAULT</string>")
+                + member("creation_event_id", "<int>" + (10000 + id) + "</int>")
+                + member("creation_time", "<string>2014-10-21 14:27:09.187413</string>")
+                + member("creation_ts", "<double>1413901629.18741</double>")
+                + member("completion_time", "<string>2014-10-21 14:31:52.716249</string>")
+                + member("completion_ts", "<double>1413901912.71625</double>")
+                + member("tag_id", "<int>42</int>")
+                + member("tag_name", "<string>" + TAG + "</string>")
+                + member("create_event", "<int>" + (10000 + id) + "</int>")
+                + member("maven_group_id", "<string>classworlds</string>")
+                + member("maven_artifact_id", "<string>classworlds</string>")
+                + member("maven_version", "<string>" + version + "</string>")
+                + "</struct>";
+    }
+
+    private static String member(String name, String value) {
+        return "<member><name>" + name + "</name><value>" + value + "</value></member>";
+    }
+
+    private static byte[] response(String value) {
+        return ("<?xml version='1.0'?>\n<methodResponse>\n<params>\n<param>\n<value>" + value
+                + "</value>\n</param>\n</params>\n</methodResponse>\n").getBytes(UTF8);
+    }
+
+    /**
+     * Fault response, as sent for methods without a recording.
+     */
+    static byte[] fault(int code, String message) {
+        return ("<?xml version='1.0'?>\n<methodResponse>\n<fault>\n<value><struct>"
+                + member("faultCode", "<int>" + code + "</int>")
+                + member("faultString", "<string>" + message + "</string>")
+                + "</struct></value>\n</fault>\n</methodResponse>\n").getBytes(UTF8);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of listTagged responses with MyTypeFactory, the same way KojiTransportFactory parses them, but
+ * without any I/O. Compares plain maps, structs mapped to KojiBuild while parsing and builds streamed to a handler.
+ *
+ * Run with -prof gc: gc.alloc.rate.norm is the allocation per parsed response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class MyTypeFactoryBenchmark {
+
+    @Param({"10", "100000"})
+    public int builds;
+
+    private byte[] response;
+    private XmlRpcClientConfigImpl config;
+    private MyTypeFactory typeFactory;
+
+    @Setup
+    public void setUp() {
+        response = KojiResponses.listTagged(builds);
+        config = new XmlRpcClientConfigImpl();
+        config.setEnabledForExtensions(true);
+        typeFactory = new MyTypeFactory(new XmlRpcClient());
+    }
+
+    @Benchmark
+    public Object parseMaps() throws Exception {
+        return parse(null, null);
+    }
+
+    @Benchmark
+    public Object parseBuilds() throws Exception {
+        return parse(KojiBuild.MAPPER, null);
+    }
+
+    @Benchmark
+    public Object streamBuilds(final Blackhole blackhole) throws Exception {
+        return parse(KojiBuild.MAPPER, new MyTypeFactory.ElementHandler() {
+            public void handleElement(Object element) {
+                blackhole.consume(element);
+            }
+        });
+    }
+
+    private Object parse(MyTypeFactory.StructMapper mapper, MyTypeFactory.ElementHandler handler) throws Exception {
+        if (mapper != null || handler != null) {
+            MyTypeFactory.expectResponse(mapper, handler);
+        }
+        try {
+            return KojiResponseParser.parse(config, typeFactory, new ByteArrayInputStream(response));
+        } finally {
+            MyTypeFactory.clearResponse();
+        }
+    }
+}
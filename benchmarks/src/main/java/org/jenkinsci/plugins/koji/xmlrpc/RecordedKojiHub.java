@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in Koji hub on a local port, answering every call with the recorded response of its method. Requests are only
+ * scanned for the method name, so the hub adds as little as possible to the measured client latency.
+ */
+public class RecordedKojiHub {
+
+    private static final Pattern METHOD_NAME = Pattern.compile("<methodName>\\s*([^<\\s]+)\\s*</methodName>");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<String, byte[]> responses;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    private RecordedKojiHub(Map<String, byte[]> responses) throws IOException {
+        this.responses = responses;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 100);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/kojihub", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+    }
+
+    /**
+     * Starts a hub on a free local port.
+     * @param responses Response bodies keyed by method name, see KojiResponses.
+     */
+    public static RecordedKojiHub start(Map<String, byte[]> responses) throws IOException {
+        RecordedKojiHub hub = new RecordedKojiHub(responses);
+        hub.server.start();
+        return hub;
+    }
+
+    /**
+     * @return XML-RPC URL to point KojiClient to.
+     */
+    public String getURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/kojihub";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        InputStream in = exchange.getRequestBody();
+        String request;
+        try {
+            request = new String(IOUtils.toByteArray(in), UTF8);
+        } finally {
+            in.close();
+        }
+
+        Matcher matcher = METHOD_NAME.matcher(request);
+        String methodName = matcher.find() ? matcher.group(1) : null;
+        byte[] body = methodName == null ? null : responses.get(methodName);
+        if (body == null) {
+            body = KojiResponses.fault(1000, "No recorded response for " + methodName);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+}
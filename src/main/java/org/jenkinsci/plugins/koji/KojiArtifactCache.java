@@ -0,0 +1,271 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.model.TaskListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-node content-addressed cache of archives downloaded from Koji, used by KojiDownloader.
+ *
+ * Archives are keyed by the checksum Koji publishes and stored as root/algorithm/ab/abcdef..., so the same archive
+ * referenced by different builds or jobs is fetched only once per node. Entries are made read-only and hardlinked into
+ * workspaces, falling back to a copy where hardlinks are not possible (other file system, Java 6).
+ *
+ * Population is safe for concurrent executors: downloads of the same archive are serialized by an in-JVM lock and a file
+ * lock next to the entry, the executor coming second finds the entry already present. Least recently used entries are
+ * evicted once the cache grows over its size limit.
+ */
+public class KojiArtifactCache {
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * In-JVM locks per entry, file locks are held by the whole JVM and do not exclude executor threads. Kept for the
+     * lifetime of the JVM, so two threads never hold different locks for the same entry.
+     */
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private final File root;
+    private final long maxSize;
+
+    /**
+     * @param root Cache directory, created if missing.
+     * @param maxSize Size limit in bytes.
+     */
+    public KojiArtifactCache(File root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Default cache location on a node, shared by all its executors.
+     */
+    public static File defaultDirectory() {
+        return new File(System.getProperty("user.home"), ".koji-plugin/artifacts");
+    }
+
+    /**
+     * Puts an archive into the workspace, downloading it into the cache first if missing.
+     * @param download Archive to get, must have a checksum.
+     * @param target Workspace file.
+     * @return True if the archive is in place.
+     */
+    boolean materialize(KojiDownloader.Download download, File target, TaskListener listener) {
+        File entry = entryFile(download.getAlgorithm(), download.getChecksum());
+        if (entry.isFile()) {
+            entry.setLastModified(System.currentTimeMillis());
+            listener.getLogger().println("[Koji integration] Using cached " + download.getPath());
+        } else if (!populate(download, entry, listener)) {
+            return false;
+        }
+
+        if (target.exists() && !target.delete()) {
+            listener.getLogger().println("[Koji integration] Unable to replace " + target);
+            return false;
+        }
+        if (hardLink(entry, target)) {
+            return true;
+        }
+        try {
+            copy(entry, target);
+            return true;
+        } catch (IOException e) {
+            listener.getLogger().println("[Koji integration] Unable to copy cached " + download.getPath());
+            listener.getLogger().println(e.getMessage());
+            target.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Downloads an archive into the cache unless another executor or JVM did it meanwhile.
+     * @return True if the entry is present afterwards.
+     */
+    private boolean populate(KojiDownloader.Download download, File entry, TaskListener listener) {
+        File directory = entry.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            listener.getLogger().println("[Koji integration] Unable to create cache directory " + directory);
+            return false;
+        }
+
+        boolean added = false;
+        String key = entry.getAbsolutePath();
+        Object lock = locks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        try {
+            synchronized (lock) {
+                if (entry.isFile()) {
+                    listener.getLogger().println("[Koji integration] Using cached " + download.getPath());
+                    return true;
+                }
+
+                RandomAccessFile lockFile = new RandomAccessFile(new File(directory, entry.getName() + LOCK_SUFFIX), "rw");
+                try {
+                    FileLock fileLock = lockFile.getChannel().lock();
+                    try {
+                        if (entry.isFile()) {
+                            listener.getLogger().println("[Koji integration] Using cached " + download.getPath());
+                            return true;
+                        }
+
+                        File part = new File(directory, entry.getName() + PART_SUFFIX);
+                        if (!download.transfer(part, listener)) {
+                            return false;
+                        }
+                        part.setReadOnly();
+                        if (!part.renameTo(entry)) {
+                            listener.getLogger().println("[Koji integration] Unable to add " + download.getPath() + " to cache");
+                            part.delete();
+                            return false;
+                        }
+                        added = true;
+                        return true;
+                    } finally {
+                        fileLock.release();
+                    }
+                } finally {
+                    lockFile.close();
+                }
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("[Koji integration] Unable to lock cache entry for " + download.getPath());
+            listener.getLogger().println(e.getMessage());
+            return false;
+        } finally {
+            if (added) {
+                evict(listener);
+            }
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its size limit.
+     */
+    private void evict(TaskListener listener) {
+        synchronized (KojiArtifactCache.class) {
+            List<File> entries = new ArrayList<File>();
+            long size = 0;
+            File[] algorithms = root.listFiles();
+            if (algorithms == null) {
+                return;
+            }
+            for (File algorithm : algorithms) {
+                File[] prefixes = algorithm.listFiles();
+                if (prefixes == null) {
+                    continue;
+                }
+                for (File prefix : prefixes) {
+                    File[] files = prefix.listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    for (File file : files) {
+                        String name = file.getName();
+                        if (file.isFile() && !name.endsWith(PART_SUFFIX) && !name.endsWith(LOCK_SUFFIX)) {
+                            entries.add(file);
+                            size += file.length();
+                        }
+                    }
+                }
+            }
+            if (size <= maxSize) {
+                return;
+            }
+
+            final int count = entries.size();
+            Collections.sort(entries, new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    long m1 = f1.lastModified();
+                    long m2 = f2.lastModified();
+                    return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+                }
+            });
+            int evicted = 0;
+            for (File file : entries) {
+                if (size <= maxSize) {
+                    break;
+                }
+                long length = file.length();
+                // workspaces holding a hardlink keep their copy
+                if (file.delete()) {
+                    size -= length;
+                    evicted++;
+                }
+            }
+            listener.getLogger().println("[Koji integration] Evicted " + evicted + " of " + count + " cached archives");
+        }
+    }
+
+    private File entryFile(String algorithm, String checksum) {
+        String key = checksum.toLowerCase();
+        return new File(new File(new File(root, algorithm.toLowerCase()), key.substring(0, Math.min(2, key.length()))), key);
+    }
+
+    /**
+     * Links the entry into the workspace via java.nio.file.Files.createLink, looked up by reflection to keep running on
+     * Java 6 nodes.
+     * @return False if hardlinks are not supported.
+     */
+    static boolean hardLink(File existing, File link) {
+        try {
+            Class<?> files = Class.forName("java.nio.file.Files");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Method toPath = File.class.getMethod("toPath");
+            Method createLink = files.getMethod("createLink", path, path);
+            createLink.invoke(null, toPath.invoke(link), toPath.invoke(existing));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(target);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
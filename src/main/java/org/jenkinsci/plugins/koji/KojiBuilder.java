@@ -2,22 +2,41 @@ package org.jenkinsci.plugins.koji;
 
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.apache.xmlrpc.XmlRpcException;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiArchive;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuild;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuildCache;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuildStore;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiCallPolicy;
 import org.jenkinsci.plugins.koji.xmlrpc.KojiClient;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiClientPool;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiKerberos;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiLatestBuilds;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiNameIndex;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiSessionCache;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiSslContextCache;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiTaskWatcher;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.servlet.ServletException;
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 /**
@@ -161,26 +180,94 @@ public class KojiBuilder extends Builder {
 
         if (kojiTask.equals(KojiTask.mavenBuild.name())) {
             listener.getLogger().println("\n[Koji integration] Running maven build build for package " + kojiPackage + " in tag " + kojiTarget);
-            kojiRunSucceeded = kojiLauncher.mavenBuildCommand(isScratchToString(), kojiTarget, kojiScmUrl).callKoji();
+            if (koji != null && koji.isLoggedIn()) {
+                // submitted over XML-RPC, no Koji CLI needed on the node
+                int taskId = submitMavenBuild();
+                kojiRunSucceeded = taskId > 0 && watchTask(taskId);
+            } else if (koji != null) {
+                // task is submitted without waiting and watched by the controller instead of a Koji CLI process
+                int taskId = kojiLauncher.mavenBuildCommand(isScratchToString(), kojiTarget, kojiScmUrl).noWait().callKojiForTaskId();
+                kojiRunSucceeded = taskId > 0 && watchTask(taskId);
+            } else {
+                kojiRunSucceeded = kojiLauncher.mavenBuildCommand(isScratchToString(), kojiTarget, kojiScmUrl).callKoji();
+            }
         } else if (kojiTask.equals(KojiTask.download.name())) {
             listener.getLogger().println("\n[Koji integration] Downloading artifacts for build " + kojiBuild);
-            kojiRunSucceeded = kojiLauncher.downloadCommand(kojiBuild).callKoji();
+            if (Util.fixEmpty(getDescriptor().getKojiTopURL()) != null) {
+                kojiRunSucceeded = downloadBuild(build, kojiBuild);
+            } else {
+                kojiRunSucceeded = kojiLauncher.downloadCommand(kojiBuild).callKoji();
+            }
         } else if (kojiTask.equals(KojiTask.listLatest.name())) {
             listener.getLogger().println("\n[Koji integration] Listing latest build information for package " + kojiPackage + " in tag " + kojiTarget);
-            kojiRunSucceeded = getLatestBuilds(kojiPackage, kojiTarget);
+            List<String> pkgs = splitList(kojiPackage);
+            List<String> tags = splitList(kojiTarget);
+            if (pkgs.size() == 1 && tags.size() == 1 && !KojiLatestBuilds.isPattern(pkgs.get(0))) {
+                kojiRunSucceeded = getLatestBuilds(pkgs.get(0), tags.get(0));
+            } else {
+                kojiRunSucceeded = getLatestBuilds(pkgs, tags);
+            }
         } else if (kojiTask.equals(KojiTask.moshimoshi.name())) {
             kojiLauncher.moshiMoshiCommand().callKoji();
             // always return true, as moshimoshi sometimes returns non-international characters, that cannot be logged
             kojiRunSucceeded = true;
         }
 
-//        listener.getLogger().println("\n[Koji integration] Watching task");
-//        kojiLauncher.watchTaskCommand("366");
-//        kojiLauncher.callKoji();
-
         return kojiRunSucceeded;
     }
 
+    /**
+     * Submits a maven build directly over XML-RPC using the logged in session.
+     * @return Id of the created task or -1 if submission failed.
+     */
+    private int submitMavenBuild() {
+        try {
+            int taskId = koji.mavenBuild(kojiScmUrl, kojiTarget, kojiScratchBuild);
+            listener.getLogger().println("[Koji integration] Created task: " + taskId);
+            return taskId;
+        } catch (XmlRpcException e) {
+            listener.getLogger().println("[Koji integration] Error executing Koji command.");
+            listener.getLogger().println(e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Waits for a Koji task to finish. The task is polled by the controller-wide KojiTaskWatcher together with tasks
+     * of other builds, no Koji CLI process or hub connection is held while waiting.
+     * @param taskId Numeric task id.
+     * @return True if the task closed successfully.
+     */
+    private boolean watchTask(int taskId) {
+        listener.getLogger().println("\n[Koji integration] Watching task " + taskId);
+        Future<org.jenkinsci.plugins.koji.xmlrpc.KojiTask> watch;
+        try {
+            watch = KojiTaskWatcher.getInstance().watch(koji.getKojiInstanceURL(), taskId);
+        } catch (MalformedURLException e) {
+            listener.getLogger().println("[Koji integration] Error executing Koji command.");
+            listener.getLogger().println(e.getMessage());
+            return false;
+        }
+
+        try {
+            org.jenkinsci.plugins.koji.xmlrpc.KojiTask task = watch.get();
+            listener.getLogger().println("[Koji integration] Task " + taskId + " finished in state " + task.getState());
+            return task.getState() == org.jenkinsci.plugins.koji.xmlrpc.KojiTask.TaskState.CLOSED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            watch.cancel(false);
+            listener.getLogger().println("[Koji integration] Stopped watching task " + taskId + ", the task keeps running in Koji.");
+            return false;
+        } catch (CancellationException e) {
+            listener.getLogger().println("[Koji integration] Stopped watching task " + taskId + ", the task keeps running in Koji.");
+            return false;
+        } catch (ExecutionException e) {
+            listener.getLogger().println("[Koji integration] Error watching task " + taskId);
+            listener.getLogger().println(e.getCause().getMessage());
+            return false;
+        }
+    }
+
     /**
      * Translate boolean to Koji CLI accepted string.
      */
@@ -198,7 +285,7 @@ public class KojiBuilder extends Builder {
      * @return Run successful?
      */
     private boolean getLatestBuilds(String pkg, String tag) {
-        Map<String, String> result = null;
+        KojiBuild result = null;
 
         listener.getLogger().println("\n[Koji integration] Searching latest build for package " + pkg + " in tag " + tag);
         try {
@@ -214,14 +301,104 @@ public class KojiBuilder extends Builder {
                 return false;
             }
         }
-        for (Map.Entry<String, String> entry : result.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
+        listener.getLogger().println(result.toDetailedString());
 
-            listener.getLogger().println(key + ": " + value);
+        return true;
+    }
+
+    /**
+     * Fetch and print latest builds of many packages in many tags, looked up concurrently.
+     * @param pkgs Koji packages or package patterns.
+     * @param tags Koji tags.
+     * @return Run successful, i.e. every package found in every tag?
+     */
+    private boolean getLatestBuilds(List<String> pkgs, List<String> tags) {
+        if (pkgs.isEmpty() || tags.isEmpty()) {
+            listener.getLogger().println("[Koji integration] Koji package and tag are required.");
+            return false;
+        }
+        if (koji == null) {
+            listener.getLogger().println("[Koji integration] No connection to Koji hub.");
+            return false;
         }
 
-        return true;
+        List<KojiLatestBuilds.Result> results;
+        try {
+            results = new KojiLatestBuilds(koji).resolve(tags, pkgs);
+        } catch (XmlRpcException e) {
+            listener.getLogger().println("[Koji integration] Error executing Koji command.");
+            listener.getLogger().println(e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.getLogger().println("[Koji integration] Interrupted while searching latest builds.");
+            return false;
+        }
+
+        boolean allFound = true;
+        for (KojiLatestBuilds.Result result : results) {
+            if (result.getBuild() == null) {
+                listener.getLogger().println("[Koji integration] No package " + result.getPkg() + " found for tag " + result.getTag());
+                allFound = false;
+            } else {
+                listener.getLogger().println(result.getTag() + "\t" + result.getBuild().getName() + "\t" + result.getBuild().getNvr());
+            }
+        }
+
+        return allFound;
+    }
+
+    /**
+     * Splits a list of packages or tags separated by commas or whitespace.
+     */
+    static List<String> splitList(String list) {
+        List<String> items = new ArrayList<String>();
+        if (list != null) {
+            for (String item : list.split("[,\\s]+")) {
+                if (item.length() > 0) {
+                    items.add(item);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Downloads maven archives of a build directly from Koji file storage into the workspace.
+     * @param build Jenkins build providing the workspace.
+     * @param buildId Koji build id, can be NVR or maven coordinate.
+     * @return Run successful?
+     */
+    private boolean downloadBuild(AbstractBuild<?, ?> build, String buildId) {
+        try {
+            KojiBuild kojiBuildInfo = koji.getBuildInfo(buildId);
+            if (kojiBuildInfo == null) {
+                listener.getLogger().println("[Koji integration] No build with id=" + buildId + " found in the database.");
+                return false;
+            }
+            List<KojiArchive> archives = koji.listArchives(kojiBuildInfo.getId());
+            if (archives.isEmpty()) {
+                listener.getLogger().println("[Koji integration] No maven archives found for build " + buildId);
+                return false;
+            }
+
+            KojiDownloader downloader = new KojiDownloader(getDescriptor().getKojiTopURL(), kojiBuildInfo, archives,
+                    listener, KojiDownloader.DEFAULT_PARALLEL_DOWNLOADS, getDescriptor().getArtifactCacheSize() * 1024L * 1024L);
+            listener.getLogger().println("[Koji integration] Downloading " + downloader.getArchiveCount() + " archives of " + kojiBuildInfo.getNvr());
+            return build.getWorkspace().act(downloader);
+        } catch (XmlRpcException e) {
+            listener.getLogger().println("[Koji integration] Error executing Koji command.");
+            listener.getLogger().println(e.getMessage());
+            return false;
+        } catch (IOException e) {
+            listener.getLogger().println("[Koji integration] Error downloading build " + buildId);
+            listener.getLogger().println(e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.getLogger().println("[Koji integration] Interrupted while downloading build " + buildId);
+            return false;
+        }
     }
 
     /**
@@ -229,27 +406,21 @@ public class KojiBuilder extends Builder {
      * @param build Build id, can be NVR or maven coordinate. See javadoc for field kojiBuild for syntax details.
      */
     private void getBuildInfo(String build) {
-        Map<String, String> buildInfo = null;
+        KojiBuild buildInfo = null;
 
         listener.getLogger().println("\n[Koji integration] Searching for build information for " + build);
         try {
             buildInfo = koji.getBuildInfo(build);
         } catch (XmlRpcException e) {
-            if (e.getMessage() == "empty") {
-                listener.getLogger().println("[Koji integration] No build with id=" + build + " found in the database.");
-                return;
-            }
-            else {
-                listener.getLogger().println("[Koji integration] Error executing Koji command.");
-                listener.getLogger().println(e.getMessage());
-            }
+            listener.getLogger().println("[Koji integration] Error executing Koji command.");
+            listener.getLogger().println(e.getMessage());
+            return;
         }
-        for (Map.Entry<String, String> entry : buildInfo.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-
-            listener.getLogger().println(key + ": " + value);
+        if (buildInfo == null) {
+            listener.getLogger().println("[Koji integration] No build with id=" + build + " found in the database.");
+            return;
         }
+        listener.getLogger().println(buildInfo.toDetailedString());
     }
 
     /**
@@ -266,8 +437,16 @@ public class KojiBuilder extends Builder {
             listener.getLogger().println(e.getMessage());
         }
 
-        if (getDescriptor().getAuthentication().equals(Authentication.plain.name())) {
-            koji.login(getDescriptor().getKojiUsername(), getDescriptor().getKojiPassword());
+        DescriptorImpl descriptor = getDescriptor();
+        if (descriptor.getAuthentication().equals(Authentication.plain.name())) {
+            koji.login(descriptor.getKojiUsername(), descriptor.getKojiPassword());
+        } else if (descriptor.getAuthentication().equals(Authentication.openSSL.name())) {
+            // without a certificate, Koji CLI is left to use its own configuration
+            if (Util.fixEmpty(descriptor.getSslCertificatePath()) != null) {
+                koji.sslLogin(descriptor.getSslCertificatePath());
+            }
+        } else if (descriptor.getAuthentication().equals(Authentication.kerberos.name())) {
+            koji.gssapiLogin(Util.fixEmpty(descriptor.getKerberosPrincipal()), Util.fixEmpty(descriptor.getKerberosKeytab()));
         }
     }
 
@@ -299,6 +478,19 @@ public class KojiBuilder extends Builder {
      */
     @Extension // This indicates to Jenkins that this is an implementation of an extension point.
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        /**
+         * Directory within JENKINS_HOME holding persisted Koji build metadata.
+         */
+        private static final String BUILD_STORE_DIR = "koji-plugin/builds";
+        /**
+         * Default size limit of the artifact cache on every node, in MB.
+         */
+        public static final int DEFAULT_ARTIFACT_CACHE_SIZE = 10240;
+        /**
+         * Maximum of names offered while typing a tag or package.
+         */
+        private static final int AUTO_COMPLETE_LIMIT = 20;
+
         /**
          * To persist global configuration information,
          * simply store it in a field and call save().
@@ -312,6 +504,11 @@ public class KojiBuilder extends Builder {
          * base Koji URL is not enough. For this reason users have to set full URL to hub and there is no pseudo-intelligent resolving.
          */
         private String kojiInstanceURL;
+        /**
+         * Base URL of Koji file storage ("topurl" in Koji CLI configuration), e.g. http://koji.localdomain/kojifiles.
+         * When set, builds are downloaded directly instead of forking Koji CLI.
+         */
+        private String kojiTopURL;
         /**
          * Selected authentication, see Authentication enum.
          */
@@ -328,6 +525,46 @@ public class KojiBuilder extends Builder {
          * Path to SSL certificate used for Koji authentication on a  local file system.
          */
         private String sslCertificatePath;
+        /**
+         * Kerberos principal, empty for the default principal of the Jenkins user's ticket cache.
+         */
+        private String kerberosPrincipal;
+        /**
+         * Keytab of kerberosPrincipal, empty to use the Jenkins user's ticket cache.
+         */
+        private String kerberosKeytab;
+        /**
+         * Maximum of completed builds kept in controller-wide build cache.
+         */
+        private int buildCacheSize = KojiBuildCache.DEFAULT_MAX_BUILDS;
+        /**
+         * How long answers to latest build lookups are reused, in seconds. 0 disables caching of latest builds.
+         */
+        private int latestBuildsTtl = KojiBuildCache.DEFAULT_LATEST_TTL_SECONDS;
+        /**
+         * Size limit of the artifact cache on every node, in MB. 0 disables the cache.
+         */
+        private int artifactCacheSize = DEFAULT_ARTIFACT_CACHE_SIZE;
+        /**
+         * Maximum of calls in flight against the Koji hub.
+         */
+        private int hubMaxConnections = KojiClientPool.DEFAULT_MAX_CLIENTS;
+        /**
+         * Maximum of calls per second against the Koji hub, 0 for no limit.
+         */
+        private double hubRateLimit;
+        /**
+         * Captures raw XML-RPC traffic into the wire log shown on the Koji metrics page.
+         */
+        private boolean wireLog;
+        /**
+         * Asks the hub for gzip compressed responses.
+         */
+        private boolean compressResponses = true;
+        /**
+         * Sends gzip compressed requests, needs a hub accepting them.
+         */
+        private boolean compressRequests;
 
 
         /**
@@ -336,6 +573,29 @@ public class KojiBuilder extends Builder {
         public DescriptorImpl() {
             super(KojiBuilder.class);
             load();
+            applyCacheSettings();
+            applyHubLimits();
+            // completed builds survive restarts in JENKINS_HOME, the store is only read once first needed
+            KojiBuildCache.getInstance().setStore(new KojiBuildStore(new File(Jenkins.getInstance().getRootDir(), BUILD_STORE_DIR)));
+        }
+
+        /**
+         * Passes cache configuration to the controller-wide build cache.
+         */
+        private void applyCacheSettings() {
+            KojiBuildCache cache = KojiBuildCache.getInstance();
+            cache.setMaxBuilds(buildCacheSize > 0 ? buildCacheSize : KojiBuildCache.DEFAULT_MAX_BUILDS);
+            cache.setLatestTtlMillis(latestBuildsTtl * 1000L);
+        }
+
+        /**
+         * Passes limits of calls against the hub to the client pools.
+         */
+        private void applyHubLimits() {
+            KojiClientPool.setLimits(hubMaxConnections, hubRateLimit);
+            KojiClientPool.setDebugAll(wireLog);
+            KojiCallPolicy.getInstance().setCompressResponses(compressResponses);
+            KojiCallPolicy.getInstance().setCompressRequests(compressRequests);
         }
 
         /**
@@ -355,6 +615,89 @@ public class KojiBuilder extends Builder {
             return FormValidation.ok();
         }
 
+        /**
+         * Offers tags and build targets of the hub starting with the last item typed. Answered from KojiNameIndex
+         * without calling the hub, nothing is offered until the index is loaded.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public AutoCompletionCandidates doAutoCompleteKojiTarget(@QueryParameter String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            KojiNameIndex index = getNameIndex();
+            if (index != null) {
+                candidates.getValues().addAll(index.completeTagOrTarget(lastItem(value), AUTO_COMPLETE_LIMIT));
+            }
+            return candidates;
+        }
+
+        /**
+         * Offers packages of the hub starting with the last item typed.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public AutoCompletionCandidates doAutoCompleteKojiPackage(@QueryParameter String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            KojiNameIndex index = getNameIndex();
+            if (index != null) {
+                candidates.getValues().addAll(index.completePackage(lastItem(value), AUTO_COMPLETE_LIMIT));
+            }
+            return candidates;
+        }
+
+        /**
+         * Warns about tags or build targets the hub does not know. Only a warning, the index may be some minutes old.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public FormValidation doCheckKojiTarget(@QueryParameter String value) {
+            KojiNameIndex index = getNameIndex();
+            if (index == null) {
+                return FormValidation.ok();
+            }
+            List<String> unknown = new ArrayList<String>();
+            for (String target : splitList(value)) {
+                if (!index.isTag(target) && !index.isTarget(target)) {
+                    unknown.add(target);
+                }
+            }
+            return unknown.isEmpty() ? FormValidation.ok()
+                    : FormValidation.warning("No such tag or build target in Koji: " + Util.join(unknown, ", "));
+        }
+
+        /**
+         * Warns about packages the hub does not know. Patterns are not checked.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public FormValidation doCheckKojiPackage(@QueryParameter String value) {
+            KojiNameIndex index = getNameIndex();
+            if (index == null) {
+                return FormValidation.ok();
+            }
+            List<String> unknown = new ArrayList<String>();
+            for (String pkg : splitList(value)) {
+                if (!KojiLatestBuilds.isPattern(pkg) && !index.isPackage(pkg)) {
+                    unknown.add(pkg);
+                }
+            }
+            return unknown.isEmpty() ? FormValidation.ok()
+                    : FormValidation.warning("No such package in Koji: " + Util.join(unknown, ", "));
+        }
+
+        /**
+         * @return Name index of the configured hub, null if there is none loaded yet.
+         */
+        private KojiNameIndex getNameIndex() {
+            if (Util.fixEmpty(kojiInstanceURL) == null) {
+                return null;
+            }
+            KojiNameIndex index = KojiNameIndex.forHub(kojiInstanceURL);
+            return index.isLoaded() ? index : null;
+        }
+
+        /**
+         * Part of a comma or space separated list after the last separator, the item being typed.
+         */
+        private static String lastItem(String value) {
+            return value == null ? "" : value.replaceFirst("^.*[,\\s]", "");
+        }
+
         /**
          * This buildstep is applicable to all project types.
          * @return Always true.
@@ -373,7 +716,7 @@ public class KojiBuilder extends Builder {
             ListBoxModel authModel = new ListBoxModel(
                     new ListBoxModel.Option("Username / Password", Authentication.plain.name()),
                     new ListBoxModel.Option("OpenSSL", Authentication.openSSL.name()),
-                    new ListBoxModel.Option("Kerberos (TBD)", Authentication.kerberos.name())
+                    new ListBoxModel.Option("Kerberos", Authentication.kerberos.name())
             );
 
 
@@ -431,11 +774,34 @@ public class KojiBuilder extends Builder {
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             // To persist global configuration information,
             // set that to properties and call save().
+            String previousInstanceURL = kojiInstanceURL;
             kojiInstanceURL = formData.getString("kojiInstanceURL");
+            if (previousInstanceURL != null && !previousInstanceURL.equals(kojiInstanceURL)) {
+                // connections to a hub that is no longer used are closed
+                KojiClientPool.remove(previousInstanceURL);
+                KojiNameIndex.remove(previousInstanceURL);
+            }
+            kojiTopURL = formData.optString("kojiTopURL");
             authentication = formData.getString("authentication");
             kojiUsername = formData.getString("kojiUsername");
             kojiPassword = formData.getString("kojiPassword");
             sslCertificatePath = formData.getString("sslCertificatePath");
+            kerberosPrincipal = formData.optString("kerberosPrincipal");
+            kerberosKeytab = formData.optString("kerberosKeytab");
+            // credentials may have changed, cached sessions are created on next login
+            KojiSessionCache.getInstance().clear();
+            KojiSslContextCache.getInstance().clear();
+            KojiKerberos.clear();
+            buildCacheSize = formData.optInt("buildCacheSize", KojiBuildCache.DEFAULT_MAX_BUILDS);
+            latestBuildsTtl = formData.optInt("latestBuildsTtl", KojiBuildCache.DEFAULT_LATEST_TTL_SECONDS);
+            artifactCacheSize = formData.optInt("artifactCacheSize", DEFAULT_ARTIFACT_CACHE_SIZE);
+            hubMaxConnections = formData.optInt("hubMaxConnections", KojiClientPool.DEFAULT_MAX_CLIENTS);
+            hubRateLimit = formData.optDouble("hubRateLimit", 0);
+            wireLog = formData.optBoolean("wireLog");
+            compressResponses = formData.optBoolean("compressResponses");
+            compressRequests = formData.optBoolean("compressRequests");
+            applyHubLimits();
+            applyCacheSettings();
             // ^Can also use req.bindJSON(this, formData);
             //  (easier when there are many fields; need set* methods for this, like setUseFrench)
             save();
@@ -450,6 +816,14 @@ public class KojiBuilder extends Builder {
             this.kojiInstanceURL = kojiInstanceURL;
         }
 
+        public String getKojiTopURL() {
+            return kojiTopURL;
+        }
+
+        public void setKojiTopURL(String kojiTopURL) {
+            this.kojiTopURL = kojiTopURL;
+        }
+
         @SuppressWarnings("UnusedDeclaration")
         public String getAuthentication() {
             return authentication;
@@ -485,14 +859,138 @@ public class KojiBuilder extends Builder {
         public void setSslCertificatePath(String sslCertificatePath) {
             this.sslCertificatePath = sslCertificatePath;
         }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public String getKerberosPrincipal() {
+            return kerberosPrincipal;
+        }
+
+        public void setKerberosPrincipal(String kerberosPrincipal) {
+            this.kerberosPrincipal = kerberosPrincipal;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public String getKerberosKeytab() {
+            return kerberosKeytab;
+        }
+
+        public void setKerberosKeytab(String kerberosKeytab) {
+            this.kerberosKeytab = kerberosKeytab;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public int getBuildCacheSize() {
+            return buildCacheSize;
+        }
+
+        public void setBuildCacheSize(int buildCacheSize) {
+            this.buildCacheSize = buildCacheSize;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public int getLatestBuildsTtl() {
+            return latestBuildsTtl;
+        }
+
+        public void setLatestBuildsTtl(int latestBuildsTtl) {
+            this.latestBuildsTtl = latestBuildsTtl;
+        }
+
+        public int getArtifactCacheSize() {
+            return artifactCacheSize;
+        }
+
+        public void setArtifactCacheSize(int artifactCacheSize) {
+            this.artifactCacheSize = artifactCacheSize;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public int getHubMaxConnections() {
+            return hubMaxConnections;
+        }
+
+        public void setHubMaxConnections(int hubMaxConnections) {
+            this.hubMaxConnections = hubMaxConnections;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public double getHubRateLimit() {
+            return hubRateLimit;
+        }
+
+        public void setHubRateLimit(double hubRateLimit) {
+            this.hubRateLimit = hubRateLimit;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public boolean isWireLog() {
+            return wireLog;
+        }
+
+        public void setWireLog(boolean wireLog) {
+            this.wireLog = wireLog;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public boolean isCompressResponses() {
+            return compressResponses;
+        }
+
+        public void setCompressResponses(boolean compressResponses) {
+            this.compressResponses = compressResponses;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public boolean isCompressRequests() {
+            return compressRequests;
+        }
+
+        public void setCompressRequests(boolean compressRequests) {
+            this.compressRequests = compressRequests;
+        }
+
+        /**
+         * Usage of the hub connection pools shown in global configuration, empty while the hub was not called yet.
+         * Pools are only looked up here, showing the page must not create one.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public String getHubStatistics() {
+            if (Util.fixEmpty(kojiInstanceURL) == null) {
+                return "";
+            }
+            StringBuilder statistics = new StringBuilder();
+            for (KojiClientPool pool : KojiClientPool.getPools()) {
+                if (!pool.getKojiInstanceURL().equals(kojiInstanceURL)) {
+                    continue;
+                }
+                if (statistics.length() > 0) {
+                    statistics.append("; ");
+                }
+                if (pool.getCertificatePath() != null) {
+                    statistics.append("certificate ").append(pool.getCertificatePath()).append(": ");
+                }
+                statistics.append(String.format("%d of %d connections in use, %d calls waiting, average wait %.1f ms, longest wait %.1f ms",
+                        pool.getActiveClients(), pool.getMaxClients(), pool.getWaitingCallers(), pool.getAverageWaitMillis(),
+                        pool.getMaxWaitMillis()));
+            }
+            return statistics.toString();
+        }
+
+        /**
+         * Build cache usage shown in global configuration.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public String getBuildCacheStatistics() {
+            return KojiBuildCache.getInstance().getStatistics();
+        }
     }
 
     /**
      * There are there authentication options currently supported by this plugin.
-     * Plain - Username / Password (has to be specifically enabled in Koji server DB). Only working method for XML-RPC authentication.
-     * OpenSSL - preffered method by Koji developers, however has broken support in XML-RPC Koji API. So far only works for
-     * Koji CLI.
-     * Kerberos - same as OpenSSL, has no support in XML-RPC API, works only for Koji CLI.
+     * Plain - Username / Password (has to be specifically enabled in Koji server DB).
+     * OpenSSL - preffered method by Koji developers, client certificate login over XML-RPC (sslLogin). Koji CLI uses its
+     * own configuration if no certificate is set.
+     * Kerberos - GSSAPI login over XML-RPC with the Jenkins user's ticket cache or a keytab.
      */
     enum Authentication {
         plain, openSSL, kerberos
@@ -0,0 +1,272 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiArchive;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuild;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads maven archives of a Koji build directly from Koji file storage, replacing "koji download-build".
+ *
+ * Runs on the node owning the workspace, so files are streamed straight into the workspace. Archives are fetched over
+ * parallel connections, checksums published by Koji are verified while downloading and throughput is reported per file.
+ * Files are laid out as group/id/as/path/artifactId/version/filename, the same way Koji CLI does.
+ *
+ * If enabled, archives go through the node's KojiArtifactCache, so archives already fetched by other builds on the same
+ * node are linked into the workspace instead of downloaded again.
+ */
+public class KojiDownloader implements FilePath.FileCallable<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of archives downloaded at the same time.
+     */
+    public static final int DEFAULT_PARALLEL_DOWNLOADS = 4;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Volume of builds stored directly under the top directory.
+     */
+    private static final String DEFAULT_VOLUME = "DEFAULT";
+
+    private final List<Download> downloads = new ArrayList<Download>();
+    private final TaskListener listener;
+    private final int parallelDownloads;
+    /**
+     * Size limit of the node's artifact cache in bytes, 0 disables the cache.
+     */
+    private final long maxCacheSize;
+
+    /**
+     * @param kojiTopURL Base URL of Koji file storage, e.g. http://koji.localdomain/kojifiles
+     * @param build Build whose archives are downloaded.
+     * @param archives Maven archives of the build.
+     * @param listener Listener receiving progress.
+     * @param parallelDownloads Number of concurrent downloads.
+     * @param maxCacheSize Size limit of the node's artifact cache in bytes, 0 disables the cache.
+     */
+    public KojiDownloader(String kojiTopURL, KojiBuild build, List<KojiArchive> archives, TaskListener listener,
+                          int parallelDownloads, long maxCacheSize) {
+        this.listener = listener;
+        this.parallelDownloads = Math.max(1, parallelDownloads);
+        this.maxCacheSize = maxCacheSize;
+
+        String buildURL = mavenBuildURL(kojiTopURL, build);
+        for (KojiArchive archive : archives) {
+            downloads.add(new Download(buildURL + archive.getMavenPath(), archive.getMavenPath(), archive.getSize(),
+                    archive.getChecksum(), archive.getChecksumType().getAlgorithm()));
+        }
+    }
+
+    /**
+     * Koji stores maven builds under packages/name/version/release/maven/, builds on other volumes than DEFAULT under
+     * vol/volume/packages/...
+     */
+    static String mavenBuildURL(String kojiTopURL, KojiBuild build) {
+        StringBuilder sb = new StringBuilder(kojiTopURL);
+        if (!kojiTopURL.endsWith("/")) {
+            sb.append('/');
+        }
+        String volume = build.getVolumeName();
+        if (volume != null && !volume.isEmpty() && !DEFAULT_VOLUME.equals(volume)) {
+            sb.append("vol/").append(volume).append('/');
+        }
+        sb.append("packages/").append(build.getName()).append('/').append(build.getVersion()).append('/')
+                .append(build.getRelease()).append("/maven/");
+        return sb.toString();
+    }
+
+    public int getArchiveCount() {
+        return downloads.size();
+    }
+
+    /**
+     * Downloads all archives into the workspace.
+     * @return True if every archive was downloaded and verified.
+     */
+    public Boolean invoke(final File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        final KojiArtifactCache cache = maxCacheSize > 0 ? new KojiArtifactCache(KojiArtifactCache.defaultDirectory(), maxCacheSize) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelDownloads, Math.max(1, downloads.size())));
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final Download download : downloads) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return download.fetch(workspace, cache, listener);
+                    }
+                }));
+            }
+
+            boolean successful = true;
+            for (Future<Boolean> result : results) {
+                try {
+                    successful &= result.get();
+                } catch (ExecutionException e) {
+                    listener.getLogger().println("[Koji integration] Download failed: " + e.getCause());
+                    successful = false;
+                }
+            }
+            return successful;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hex encoding of a digest, as published by Koji.
+     */
+    static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Single archive to be downloaded.
+     */
+    static class Download implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+        /**
+         * Target path relative to workspace.
+         */
+        private final String path;
+        private final long size;
+        private final String checksum;
+        private final String algorithm;
+
+        Download(String url, String path, long size, String checksum, String algorithm) {
+            this.url = url;
+            this.path = path;
+            this.size = size;
+            this.checksum = checksum;
+            this.algorithm = algorithm;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String getChecksum() {
+            return checksum;
+        }
+
+        String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * Puts the archive into the workspace, from cache if possible.
+         * @param cache Node's artifact cache, null if disabled.
+         * @return True if the archive is in place and checksum matches.
+         */
+        boolean fetch(File workspace, KojiArtifactCache cache, TaskListener listener) {
+            File target = new File(workspace, path);
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                listener.getLogger().println("[Koji integration] Unable to create directory " + parent);
+                return false;
+            }
+
+            if (cache != null && checksum != null) {
+                return cache.materialize(this, target, listener);
+            }
+            return transfer(target, listener);
+        }
+
+        /**
+         * Streams the archive into a file, computing its checksum on the fly.
+         * @return True if downloaded and checksum matches.
+         */
+        boolean transfer(File target, TaskListener listener) {
+            long started = System.currentTimeMillis();
+            long transferred = 0;
+            String actualChecksum;
+            InputStream in = null;
+            OutputStream out = null;
+            try {
+                URLConnection connection = new URL(url).openConnection();
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                DigestInputStream digestStream = new DigestInputStream(connection.getInputStream(),
+                        MessageDigest.getInstance(algorithm));
+                in = digestStream;
+                out = new FileOutputStream(target);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    transferred += read;
+                }
+                actualChecksum = toHex(digestStream.getMessageDigest().digest());
+            } catch (IOException e) {
+                listener.getLogger().println("[Koji integration] Error downloading " + url);
+                listener.getLogger().println(e.getMessage());
+                target.delete();
+                return false;
+            } catch (NoSuchAlgorithmException e) {
+                listener.getLogger().println("[Koji integration] Unsupported checksum " + algorithm + " for " + path);
+                return false;
+            } finally {
+                closeQuietly(in);
+                closeQuietly(out);
+            }
+
+            if (size >= 0 && transferred != size) {
+                listener.getLogger().println("[Koji integration] Size mismatch for " + path + ": expected " + size
+                        + " bytes, got " + transferred);
+                target.delete();
+                return false;
+            }
+            if (checksum != null && !checksum.equalsIgnoreCase(actualChecksum)) {
+                listener.getLogger().println("[Koji integration] Checksum mismatch for " + path + ": expected "
+                        + checksum + ", got " + actualChecksum);
+                target.delete();
+                return false;
+            }
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - started);
+            listener.getLogger().println(String.format("[Koji integration] Downloaded %s (%d bytes) in %d ms, %.1f KB/s",
+                    path, transferred, elapsed, transferred / 1.024 / elapsed));
+            return true;
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+}
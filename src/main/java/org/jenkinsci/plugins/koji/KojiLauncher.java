@@ -3,16 +3,27 @@ package org.jenkinsci.plugins.koji;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiMetrics;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * This class server for invocation of the Koji CLI. This is required especially for OpenSSL and Kerberos authentication
- * which are currently not properly supported in the Koji XML-RPC API.
+ * This class server for invocation of the Koji CLI. This is required for tasks not available over XML-RPC, and used as a
+ * fallback when the controller has no Koji session of its own.
  */
 public class KojiLauncher {
 
+    /**
+     * Koji CLI reports submitted tasks as "Created task: 123".
+     */
+    private static final Pattern CREATED_TASK = Pattern.compile("Created task: (\\d+)");
+
     /**
      * Workspace path
      */
@@ -98,6 +109,15 @@ public class KojiLauncher {
         return this;
     }
 
+    /**
+     * Makes the command return right after submitting its task instead of watching it. Be sure to call one of the
+     * *Command() methods first.
+     */
+    KojiLauncher noWait() {
+        command = concatenate(command, new String[] {"--nowait"});
+        return this;
+    }
+
     /**
      * Watch a Koji task.
      * @param taskId TaskId, usually a number.
@@ -121,6 +141,28 @@ public class KojiLauncher {
      * @return
      */
     public boolean callKoji() {
+        return callKoji(listener.getLogger());
+    }
+
+    /**
+     * Calls Koji with a command submitting a task without waiting, see noWait().
+     * @return Id of the created task or -1 if the call failed.
+     */
+    public int callKojiForTaskId() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!callKoji(new TeeOutputStream(listener.getLogger(), output))) {
+            return -1;
+        }
+
+        Matcher matcher = CREATED_TASK.matcher(output.toString());
+        if (!matcher.find()) {
+            listener.getLogger().println("[Koji integration] Unable to find id of the created task in Koji output.");
+            return -1;
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private boolean callKoji(OutputStream stdout) {
         boolean successfull = true;
 
         successfull = (workspacePath != null);
@@ -128,8 +170,11 @@ public class KojiLauncher {
 
 //        listener.getLogger().println("[Koji integration] Workspace path: " + workspacePath);
 
+        KojiMetrics.MethodMetrics metrics = KojiMetrics.getInstance().forMethod("cli:" + command[1]);
+        long started = metrics.started();
+        successfull = false;
         try {
-            int exitCode = launcher.launch().cmds(command).envs(build.getEnvironment(listener)).pwd(build.getWorkspace()).stdout(listener).join();
+            int exitCode = launcher.launch().cmds(command).envs(build.getEnvironment(listener)).pwd(build.getWorkspace()).stdout(stdout).join();
             successfull = (exitCode == 0);
         } catch (IOException e) {
             listener.getLogger().println("[Koji integration] Error executing Koji command.");
@@ -139,6 +184,8 @@ public class KojiLauncher {
             listener.getLogger().println("[Koji integration] Error executing Koji command.");
             listener.getLogger().println(e.getMessage());
             return false;
+        } finally {
+            metrics.completed(started, !successfull);
         }
 
         return successfull;
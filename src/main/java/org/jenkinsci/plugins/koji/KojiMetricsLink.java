@@ -0,0 +1,189 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuildCache;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiClientPool;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiMetrics;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiSessionCache;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiTaskWatcher;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiWireLog;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Status page of the Koji plugin under Manage Jenkins, showing call metrics, hub connection health and caches.
+ *
+ * Metrics are also available for monitoring systems through the remote API at koji-metrics/api/json.
+ */
+@Extension
+@ExportedBean
+public class KojiMetricsLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER) ? "notepad.png" : null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "koji-metrics";
+    }
+
+    public String getDisplayName() {
+        return "Koji metrics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Latency, errors and traffic of calls to the Koji hub, hub connection health and cache statistics.";
+    }
+
+    public Api getApi() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return new Api(this);
+    }
+
+    /**
+     * Raw XML-RPC exchanges captured while "Capture raw XML-RPC traffic" is enabled, as plain text.
+     */
+    public void doWireLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain;charset=UTF-8");
+        KojiWireLog.getInstance().dump(rsp.getWriter());
+    }
+
+    @Exported
+    public List<KojiMetrics.MethodMetrics> getMethods() {
+        return KojiMetrics.getInstance().getMethods();
+    }
+
+    @Exported
+    public List<HubStatus> getHubs() {
+        List<HubStatus> hubs = new ArrayList<HubStatus>();
+        for (KojiClientPool pool : KojiClientPool.getPools()) {
+            hubs.add(new HubStatus(pool));
+        }
+        return hubs;
+    }
+
+    @Exported
+    public int getWatchedTasks() {
+        return KojiTaskWatcher.getInstance().getWatchedTasks();
+    }
+
+    @Exported
+    public String getBuildCacheStatistics() {
+        return KojiBuildCache.getInstance().getStatistics();
+    }
+
+    @Exported
+    public String getSessionCacheStatistics() {
+        KojiSessionCache sessions = KojiSessionCache.getInstance();
+        return String.format("%d sessions cached, %d hits / %d misses, %d re-logins", sessions.getSize(),
+                sessions.getHits(), sessions.getMisses(), sessions.getRelogins());
+    }
+
+    /**
+     * Formats latencies for the page.
+     */
+    public String formatMillis(double millis) {
+        return String.format("%.1f", millis);
+    }
+
+    /**
+     * Upper bounds of the latency histogram buckets reported per method, the last bucket has no bound.
+     */
+    @Exported
+    public long[] getHistogramBoundsMillis() {
+        return KojiMetrics.getBucketBoundsMillis();
+    }
+
+    /**
+     * Connection health of a single hub.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class HubStatus {
+        private final KojiClientPool pool;
+
+        HubStatus(KojiClientPool pool) {
+            this.pool = pool;
+        }
+
+        @Exported
+        public String getUrl() {
+            return pool.getKojiInstanceURL();
+        }
+
+        /**
+         * Client certificate of the hub's pool, null for the pool shared by other logins.
+         */
+        @Exported
+        public String getCertificate() {
+            return pool.getCertificatePath();
+        }
+
+        @Exported
+        public String getCircuitState() {
+            return pool.getCircuitBreaker().getState().name();
+        }
+
+        @Exported
+        public long getFailures() {
+            return pool.getCircuitBreaker().getFailures();
+        }
+
+        @Exported
+        public long getRetries() {
+            return pool.getCircuitBreaker().getRetries();
+        }
+
+        @Exported
+        public long getRejected() {
+            return pool.getCircuitBreaker().getRejected();
+        }
+
+        @Exported
+        public int getActiveClients() {
+            return pool.getActiveClients();
+        }
+
+        @Exported
+        public int getMaxClients() {
+            return pool.getMaxClients();
+        }
+
+        @Exported
+        public int getWaitingCallers() {
+            return pool.getWaitingCallers();
+        }
+
+        @Exported
+        public int getQueuedAsyncCalls() {
+            return pool.getQueuedAsyncCalls();
+        }
+
+        @Exported
+        public double getAverageWaitMillis() {
+            return pool.getAverageWaitMillis();
+        }
+
+        @Exported
+        public double getMaxWaitMillis() {
+            return pool.getMaxWaitMillis();
+        }
+
+        @Exported
+        public long getCoalescedCalls() {
+            return pool.getSingleFlight().getCoalesced();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiClient;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiNameIndex;
+
+/**
+ * Keeps the KojiNameIndex of the configured hub loaded for autocompletion and validation in job configuration.
+ *
+ * Checks the hub's last event once a minute. The names are loaded right away the first time, later only if the hub
+ * changed and the index is older than the refresh interval, so a busy hub is not asked for all its packages every
+ * minute.
+ */
+@Extension
+public class KojiNameIndexUpdater extends AsyncPeriodicWork {
+
+    private static final long RECURRENCE_PERIOD_MILLIS = 60 * 1000;
+    private static final long REFRESH_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    public KojiNameIndexUpdater() {
+        super("Koji name index updater");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD_MILLIS;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        String kojiInstanceURL = Util.fixEmpty(Jenkins.getInstance().getDescriptorByType(KojiBuilder.DescriptorImpl.class)
+                .getKojiInstanceURL());
+        if (kojiInstanceURL == null) {
+            return;
+        }
+
+        KojiNameIndex index = KojiNameIndex.forHub(kojiInstanceURL);
+        if (index.isLoaded() && System.currentTimeMillis() - index.getLoaded() < REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+
+        try {
+            KojiClient koji = KojiClient.getKojiClient(kojiInstanceURL);
+            int event = koji.getLastEvent();
+            if (index.isLoaded() && event == index.getEvent()) {
+                return;
+            }
+
+            long started = System.currentTimeMillis();
+            index.refresh(koji, event);
+            listener.getLogger().println("Loaded " + index.getTagCount() + " tags, " + index.getTargetCount()
+                    + " build targets and " + index.getPackageCount() + " packages as of event " + event + " in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            e.printStackTrace(listener.error("Unable to load names from Koji hub " + kojiInstanceURL));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.apache.xmlrpc.XmlRpcException;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuild;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiClient;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiTagIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Controller-wide poller behind KojiTagTrigger.
+ *
+ * Once a minute asks the hub for its last event. Only if it moved, every tag with at least one subscribed job is synced
+ * through its KojiTagIndex, which fetches just the tag history since the previous poll. Newly tagged builds are then
+ * passed to all triggers subscribed to the tag. Hub load depends on the number of watched tags, not on the number of
+ * jobs.
+ */
+@Extension
+public class KojiTagPoller extends AsyncPeriodicWork {
+
+    private static final long RECURRENCE_PERIOD_MILLIS = 60 * 1000;
+
+    /**
+     * Subscribed triggers per tag.
+     */
+    private static final Map<String, List<KojiTagTrigger>> subscriptions = new HashMap<String, List<KojiTagTrigger>>();
+
+    /**
+     * Hub and event of the last complete poll, a poll is skipped when neither changed.
+     */
+    private static String lastInstanceURL;
+    private static int lastEvent;
+
+    public KojiTagPoller() {
+        super("Koji tag poller");
+    }
+
+    static synchronized void subscribe(String tag, KojiTagTrigger trigger) {
+        List<KojiTagTrigger> triggers = subscriptions.get(tag);
+        if (triggers == null) {
+            triggers = new CopyOnWriteArrayList<KojiTagTrigger>();
+            subscriptions.put(tag, triggers);
+            // the new tag has to be indexed on next poll even if the hub is quiet
+            lastEvent = 0;
+        }
+        triggers.add(trigger);
+    }
+
+    static synchronized void unsubscribe(String tag, KojiTagTrigger trigger) {
+        List<KojiTagTrigger> triggers = subscriptions.get(tag);
+        if (triggers != null) {
+            triggers.remove(trigger);
+            if (triggers.isEmpty()) {
+                subscriptions.remove(tag);
+                KojiTagIndex.remove(tag);
+            }
+        }
+    }
+
+    private static synchronized Map<String, List<KojiTagTrigger>> getSubscriptions() {
+        return new HashMap<String, List<KojiTagTrigger>>(subscriptions);
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RECURRENCE_PERIOD_MILLIS;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        Map<String, List<KojiTagTrigger>> tags = getSubscriptions();
+        String kojiInstanceURL = Util.fixEmpty(Jenkins.getInstance().getDescriptorByType(KojiBuilder.DescriptorImpl.class)
+                .getKojiInstanceURL());
+        if (tags.isEmpty() || kojiInstanceURL == null) {
+            return;
+        }
+
+        try {
+            KojiClient koji = KojiClient.getKojiClient(kojiInstanceURL);
+            int event = koji.getLastEvent();
+            synchronized (KojiTagPoller.class) {
+                if (event == lastEvent && kojiInstanceURL.equals(lastInstanceURL)) {
+                    return;
+                }
+            }
+
+            boolean complete = true;
+            for (Map.Entry<String, List<KojiTagTrigger>> entry : tags.entrySet()) {
+                final List<KojiTagTrigger> triggers = entry.getValue();
+                try {
+                    int changes = KojiTagIndex.forTag(kojiInstanceURL, entry.getKey()).sync(koji, event,
+                            new KojiClient.BuildHandler() {
+                                public void handleBuild(KojiBuild build) {
+                                    for (KojiTagTrigger trigger : triggers) {
+                                        trigger.onTagged(build);
+                                    }
+                                }
+                            });
+                    listener.getLogger().println("Tag " + entry.getKey() + " synced as of event " + event + ", "
+                            + changes + " changes");
+                } catch (XmlRpcException e) {
+                    listener.error("Unable to sync Koji tag " + entry.getKey() + ": " + e.getMessage());
+                    complete = false;
+                }
+            }
+
+            synchronized (KojiTagPoller.class) {
+                // tags unsubscribed while syncing must not keep the index created for them
+                for (String tag : tags.keySet()) {
+                    if (!subscriptions.containsKey(tag)) {
+                        KojiTagIndex.remove(tag);
+                    }
+                }
+                // tags subscribed meanwhile are not indexed yet
+                if (complete && tags.keySet().containsAll(subscriptions.keySet())) {
+                    lastInstanceURL = kojiInstanceURL;
+                    lastEvent = event;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace(listener.error("Unable to poll Koji hub " + kojiInstanceURL));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.jenkinsci.plugins.koji;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.Item;
+import hudson.triggers.Trigger;
+import hudson.triggers.TriggerDescriptor;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.koji.xmlrpc.KojiBuild;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Starts a job whenever a new build is tagged into a Koji tag, optionally only builds of a given package.
+ *
+ * The trigger does not poll on its own, it subscribes to the controller-wide KojiTagPoller, which watches each tag
+ * once for all subscribed jobs.
+ */
+public class KojiTagTrigger extends Trigger<AbstractProject<?, ?>> {
+
+    /**
+     * Koji tag watched for new builds.
+     */
+    private final String kojiTag;
+    /**
+     * Koji package, empty to react on builds of any package.
+     */
+    private final String kojiPackage;
+
+    @DataBoundConstructor
+    public KojiTagTrigger(String kojiTag, String kojiPackage) {
+        this.kojiTag = Util.fixEmptyAndTrim(kojiTag);
+        this.kojiPackage = Util.fixEmptyAndTrim(kojiPackage);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public String getKojiTag() {
+        return kojiTag;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public String getKojiPackage() {
+        return kojiPackage;
+    }
+
+    @Override
+    public void start(AbstractProject<?, ?> project, boolean newInstance) {
+        super.start(project, newInstance);
+        if (kojiTag != null) {
+            KojiTagPoller.subscribe(kojiTag, this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (kojiTag != null) {
+            KojiTagPoller.unsubscribe(kojiTag, this);
+        }
+        super.stop();
+    }
+
+    /**
+     * Called by KojiTagPoller for every build newly tagged into the watched tag.
+     */
+    void onTagged(KojiBuild build) {
+        if (job == null || (kojiPackage != null && !kojiPackage.equals(build.getName()))) {
+            return;
+        }
+        job.scheduleBuild(0, new KojiTagCause(kojiTag, build.getNvr()));
+    }
+
+    /**
+     * Cause of builds started by this trigger.
+     */
+    public static class KojiTagCause extends Cause {
+        private final String tag;
+        private final String nvr;
+
+        public KojiTagCause(String tag, String nvr) {
+            this.tag = tag;
+            this.nvr = nvr;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getNvr() {
+            return nvr;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "Started by Koji build " + nvr + " tagged into " + tag;
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends TriggerDescriptor {
+
+        @Override
+        public boolean isApplicable(Item item) {
+            return item instanceof AbstractProject;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Build when a new Koji build is tagged";
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public FormValidation doCheckKojiTag(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.error("Please set a Koji tag");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.Map;
+
+/**
+ * Archive (file) of a Koji build as returned by listArchives.
+ */
+public class KojiArchive {
+
+    /**
+     * Maps archive structs to KojiArchive during parsing.
+     */
+    static final MyTypeFactory.StructMapper MAPPER = new MyTypeFactory.StructMapper() {
+        public Object map(Map<String, ?> struct) {
+            return fromStruct(struct);
+        }
+    };
+
+    private final int id;
+    private final int buildId;
+    private final String filename;
+    private final long size;
+    private final String checksum;
+    private final ChecksumType checksumType;
+    /**
+     * Only set for maven archives.
+     */
+    private final String mavenGroupId;
+    private final String mavenArtifactId;
+    private final String mavenVersion;
+
+    KojiArchive(int id, int buildId, String filename, long size, String checksum, ChecksumType checksumType,
+                String mavenGroupId, String mavenArtifactId, String mavenVersion) {
+        this.id = id;
+        this.buildId = buildId;
+        this.filename = filename;
+        this.size = size;
+        this.checksum = checksum;
+        this.checksumType = checksumType;
+        this.mavenGroupId = mavenGroupId;
+        this.mavenArtifactId = mavenArtifactId;
+        this.mavenVersion = mavenVersion;
+    }
+
+    /**
+     * De-marshalls an archive struct.
+     * @param struct XML-RPC struct describing an archive.
+     */
+    public static KojiArchive fromStruct(Map<String, ?> struct) {
+        Object size = struct.get("size");
+        return new KojiArchive(
+                Structs.intValue(struct, "id", 0),
+                Structs.intValue(struct, "build_id", 0),
+                Structs.stringValue(struct, "filename"),
+                size instanceof Number ? ((Number) size).longValue() : -1,
+                Structs.stringValue(struct, "checksum"),
+                ChecksumType.fromCode(Structs.intValue(struct, "checksum_type", 0)),
+                Structs.internedValue(struct, "group_id"),
+                Structs.internedValue(struct, "artifact_id"),
+                Structs.internedValue(struct, "version"));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getBuildId() {
+        return buildId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return Size in bytes, -1 if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Hex encoded checksum.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    public String getMavenGroupId() {
+        return mavenGroupId;
+    }
+
+    public String getMavenArtifactId() {
+        return mavenArtifactId;
+    }
+
+    public String getMavenVersion() {
+        return mavenVersion;
+    }
+
+    /**
+     * Path of a maven archive relative to the maven directory of its build, as used by Koji:
+     * group/id/as/path/artifactId/version/filename
+     */
+    public String getMavenPath() {
+        return mavenGroupId.replace('.', '/') + "/" + mavenArtifactId + "/" + mavenVersion + "/" + filename;
+    }
+
+    @Override
+    public String toString() {
+        return filename;
+    }
+
+    /**
+     * Checksum algorithms used by Koji, ordinal matches the numeric code used by Koji.
+     */
+    public enum ChecksumType {
+        MD5("MD5"), SHA1("SHA-1"), SHA256("SHA-256");
+
+        /**
+         * Name of the algorithm for java.security.MessageDigest.
+         */
+        private final String algorithm;
+
+        ChecksumType(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        static ChecksumType fromCode(int code) {
+            ChecksumType[] types = values();
+            return code >= 0 && code < types.length ? types[code] : MD5;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Koji build as returned by getBuild, getLatestBuilds or listTagged.
+ *
+ * Compact replacement of the raw XML-RPC struct: ids, state and timestamps are primitive fields, name, version,
+ * release and other repeating strings are interned. Fields not present in a given response are 0 or null.
+ */
+public class KojiBuild {
+
+    /**
+     * Marks builds without epoch.
+     */
+    public static final int NO_EPOCH = -1;
+
+    /**
+     * Maps build structs to KojiBuild during parsing.
+     */
+    static final MyTypeFactory.StructMapper MAPPER = new MyTypeFactory.StructMapper() {
+        public Object map(Map<String, ?> struct) {
+            return fromStruct(struct);
+        }
+    };
+
+    private final int id;
+    private final int packageId;
+    private final String name;
+    private final String version;
+    private final String release;
+    private final int epoch;
+    private final BuildState state;
+    private final int taskId;
+    private final int ownerId;
+    private final String ownerName;
+    private final int volumeId;
+    private final String volumeName;
+    private final int creationEventId;
+    private final long creationTime;
+    private final long completionTime;
+    /**
+     * Only set for builds listed in a tag.
+     */
+    private final int tagId;
+    private final String tagName;
+    /**
+     * Only set for maven builds.
+     */
+    private final String mavenGroupId;
+    private final String mavenArtifactId;
+    private final String mavenVersion;
+
+    KojiBuild(int id, int packageId, String name, String version, String release, int epoch, BuildState state,
+              int taskId, int ownerId, String ownerName, int volumeId, String volumeName, int creationEventId,
+              long creationTime, long completionTime, int tagId, String tagName, String mavenGroupId,
+              String mavenArtifactId, String mavenVersion) {
+        this.id = id;
+        this.packageId = packageId;
+        this.name = name;
+        this.version = version;
+        this.release = release;
+        this.epoch = epoch;
+        this.state = state;
+        this.taskId = taskId;
+        this.ownerId = ownerId;
+        this.ownerName = ownerName;
+        this.volumeId = volumeId;
+        this.volumeName = volumeName;
+        this.creationEventId = creationEventId;
+        this.creationTime = creationTime;
+        this.completionTime = completionTime;
+        this.tagId = tagId;
+        this.tagName = tagName;
+        this.mavenGroupId = mavenGroupId;
+        this.mavenArtifactId = mavenArtifactId;
+        this.mavenVersion = mavenVersion;
+    }
+
+    /**
+     * De-marshalls a build struct.
+     * @param struct XML-RPC struct describing a build.
+     */
+    public static KojiBuild fromStruct(Map<String, ?> struct) {
+        // getBuild reports build id as "id", listTagged as "build_id" with "id" holding the same value
+        int id = Structs.intValue(struct, "build_id", Structs.intValue(struct, "id", 0));
+        String name = Structs.internedValue(struct, "package_name");
+        if (name == null) {
+            name = Structs.internedValue(struct, "name");
+        }
+
+        return new KojiBuild(
+                id,
+                Structs.intValue(struct, "package_id", 0),
+                name,
+                Structs.internedValue(struct, "version"),
+                Structs.internedValue(struct, "release"),
+                Structs.intValue(struct, "epoch", NO_EPOCH),
+                BuildState.fromCode(Structs.intValue(struct, "state", -1)),
+                Structs.intValue(struct, "task_id", 0),
+                Structs.intValue(struct, "owner_id", 0),
+                Structs.internedValue(struct, "owner_name"),
+                Structs.intValue(struct, "volume_id", 0),
+                Structs.internedValue(struct, "volume_name"),
+                Structs.intValue(struct, "creation_event_id", 0),
+                Structs.millisValue(struct, "creation_ts"),
+                Structs.millisValue(struct, "completion_ts"),
+                Structs.intValue(struct, "tag_id", 0),
+                Structs.internedValue(struct, "tag_name"),
+                Structs.internedValue(struct, "maven_group_id"),
+                Structs.internedValue(struct, "maven_artifact_id"),
+                Structs.internedValue(struct, "maven_version"));
+    }
+
+    /**
+     * Writes the build in compact binary form, used by KojiBuildStore.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(id);
+        writeString(out, name);
+        writeString(out, version);
+        writeString(out, release);
+        out.writeInt(packageId);
+        out.writeInt(epoch);
+        out.writeByte(state == null ? -1 : state.ordinal());
+        out.writeInt(taskId);
+        out.writeInt(ownerId);
+        writeString(out, ownerName);
+        out.writeInt(volumeId);
+        writeString(out, volumeName);
+        out.writeInt(creationEventId);
+        out.writeLong(creationTime);
+        out.writeLong(completionTime);
+        out.writeInt(tagId);
+        writeString(out, tagName);
+        writeString(out, mavenGroupId);
+        writeString(out, mavenArtifactId);
+        writeString(out, mavenVersion);
+    }
+
+    /**
+     * Reads a build written by writeTo().
+     */
+    static KojiBuild readFrom(DataInput in) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        String version = readString(in);
+        String release = readString(in);
+        int packageId = in.readInt();
+        int epoch = in.readInt();
+        BuildState state = BuildState.fromCode(in.readByte());
+
+        return new KojiBuild(id, packageId, name, version, release, epoch, state, in.readInt(), in.readInt(),
+                readString(in), in.readInt(), readString(in), in.readInt(), in.readLong(), in.readLong(), in.readInt(),
+                readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF().intern() : null;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getPackageId() {
+        return packageId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getRelease() {
+        return release;
+    }
+
+    /**
+     * @return Epoch or NO_EPOCH.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Name-Version-Release, composed on request instead of being kept for every build.
+     */
+    public String getNvr() {
+        return name + "-" + version + "-" + release;
+    }
+
+    public BuildState getState() {
+        return state;
+    }
+
+    /**
+     * Completed builds never change in Koji.
+     */
+    public boolean isComplete() {
+        return state == BuildState.COMPLETE;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public int getVolumeId() {
+        return volumeId;
+    }
+
+    public String getVolumeName() {
+        return volumeName;
+    }
+
+    public int getCreationEventId() {
+        return creationEventId;
+    }
+
+    /**
+     * @return Creation time in milliseconds since epoch.
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return Completion time in milliseconds since epoch, 0 if not completed.
+     */
+    public long getCompletionTime() {
+        return completionTime;
+    }
+
+    public int getTagId() {
+        return tagId;
+    }
+
+    public String getTagName() {
+        return tagName;
+    }
+
+    public String getMavenGroupId() {
+        return mavenGroupId;
+    }
+
+    public String getMavenArtifactId() {
+        return mavenArtifactId;
+    }
+
+    public String getMavenVersion() {
+        return mavenVersion;
+    }
+
+    @Override
+    public String toString() {
+        return getNvr();
+    }
+
+    /**
+     * All known properties, one "key: value" per line, using Koji property names.
+     */
+    public String toDetailedString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("nvr: ").append(getNvr());
+        sb.append("\nbuild_id: ").append(id);
+        sb.append("\npackage_id: ").append(packageId);
+        sb.append("\npackage_name: ").append(name);
+        sb.append("\nversion: ").append(version);
+        sb.append("\nrelease: ").append(release);
+        sb.append("\nepoch: ").append(epoch == NO_EPOCH ? null : epoch);
+        sb.append("\nstate: ").append(state);
+        sb.append("\ntask_id: ").append(taskId);
+        sb.append("\nowner_name: ").append(ownerName);
+        sb.append("\nvolume_name: ").append(volumeName);
+        sb.append("\ncreation_event_id: ").append(creationEventId);
+        sb.append("\ncreation_time: ").append(creationTime == 0 ? null : new Date(creationTime));
+        sb.append("\ncompletion_time: ").append(completionTime == 0 ? null : new Date(completionTime));
+        if (tagName != null) {
+            sb.append("\ntag_name: ").append(tagName);
+        }
+        if (mavenGroupId != null) {
+            sb.append("\nmaven_group_id: ").append(mavenGroupId);
+            sb.append("\nmaven_artifact_id: ").append(mavenArtifactId);
+            sb.append("\nmaven_version: ").append(mavenVersion);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Koji build states, ordinal matches the numeric code used by Koji.
+     */
+    public enum BuildState {
+        BUILDING, COMPLETE, DELETED, FAILED, CANCELED;
+
+        static BuildState fromCode(int code) {
+            BuildState[] states = values();
+            return code >= 0 && code < states.length ? states[code] : null;
+        }
+    }
+}
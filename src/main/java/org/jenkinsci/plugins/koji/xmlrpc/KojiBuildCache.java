@@ -0,0 +1,285 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller-wide read-through cache in front of KojiClient build lookups.
+ *
+ * Completed builds never change in Koji, so results of getBuild are cached without expiry, bounded by LRU eviction.
+ * Answers of getLatestBuilds change whenever something gets tagged, they are cached only for a short time and can be
+ * invalidated for a tag once a newer hub event for it is seen.
+ *
+ * Optionally completed builds returned by getBuild are also kept in a persistent KojiBuildStore, which serves lookups
+ * missing in memory, e.g. after a controller restart. Builds from latest build lookups carry tag specific fields and
+ * are kept in memory only.
+ */
+public class KojiBuildCache {
+
+    public static final int DEFAULT_MAX_BUILDS = 10000;
+    public static final int DEFAULT_LATEST_TTL_SECONDS = 60;
+
+    /**
+     * Singleton.
+     */
+    private static final KojiBuildCache instance = new KojiBuildCache();
+
+    /**
+     * Keys of builds in the builds map by hub and NVR. Entries are removed along with the build.
+     */
+    private final Map<String, String> nvrs = new HashMap<String, String>();
+    /**
+     * Completed builds keyed by hub and build id, one entry per build. Access ordered for LRU eviction.
+     */
+    private final LinkedHashMap<String, KojiBuild> builds = new LinkedHashMap<String, KojiBuild>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KojiBuild> eldest) {
+            if (size() <= maxBuilds) {
+                return false;
+            }
+            String idKey = eldest.getKey();
+            nvrs.remove(key(idKey.substring(0, idKey.lastIndexOf('\n')), eldest.getValue().getNvr()));
+            return true;
+        }
+    };
+    /**
+     * Latest build lookups keyed by hub, tag and package.
+     */
+    private final LinkedHashMap<String, LatestEntry> latestBuilds = new LinkedHashMap<String, LatestEntry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LatestEntry> eldest) {
+            return size() > maxBuilds;
+        }
+    };
+    /**
+     * Last hub event id reported for each hub, recorded with latest build lookups.
+     */
+    private final Map<String, Integer> lastEvents = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Persistent second level, may be null.
+     */
+    private volatile KojiBuildStore store;
+
+    private volatile int maxBuilds = DEFAULT_MAX_BUILDS;
+    private volatile long latestTtlMillis = DEFAULT_LATEST_TTL_SECONDS * 1000L;
+
+    private final AtomicLong buildHits = new AtomicLong();
+    private final AtomicLong buildMisses = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong latestHits = new AtomicLong();
+    private final AtomicLong latestMisses = new AtomicLong();
+
+    public static KojiBuildCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Looks up a build.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     * @param buildId Build id or NVR.
+     * @return Cached build or null.
+     */
+    public KojiBuild getBuild(String kojiInstanceURL, String buildId) {
+        KojiBuild build;
+        synchronized (this) {
+            build = builds.get(key(kojiInstanceURL, buildId));
+            if (build == null) {
+                String idKey = nvrs.get(key(kojiInstanceURL, buildId));
+                build = idKey == null ? null : builds.get(idKey);
+            }
+        }
+        if (build == null && store != null) {
+            build = store.get(kojiInstanceURL, buildId);
+            if (build != null) {
+                storeHits.incrementAndGet();
+                cacheBuild(kojiInstanceURL, build);
+            }
+        }
+        (build == null ? buildMisses : buildHits).incrementAndGet();
+        return build;
+    }
+
+    /**
+     * Caches a build returned by getBuild under both its id and NVR, in memory and in the persistent store. Builds
+     * that are not completed yet may still change and are ignored.
+     */
+    public void putBuild(String kojiInstanceURL, KojiBuild build) {
+        if (build == null || !build.isComplete()) {
+            return;
+        }
+        cacheBuild(kojiInstanceURL, build);
+        KojiBuildStore buildStore = store;
+        if (buildStore != null) {
+            buildStore.put(kojiInstanceURL, build);
+        }
+    }
+
+    private synchronized void cacheBuild(String kojiInstanceURL, KojiBuild build) {
+        String idKey = key(kojiInstanceURL, String.valueOf(build.getId()));
+        builds.put(idKey, build);
+        nvrs.put(key(kojiInstanceURL, build.getNvr()), idKey);
+    }
+
+    /**
+     * Looks up latest build of a package in a tag.
+     * @return Cached build or null if not cached or expired.
+     */
+    public synchronized KojiBuild getLatestBuild(String kojiInstanceURL, String tag, String pkg) {
+        String key = key(kojiInstanceURL, tag, pkg);
+        LatestEntry entry = latestBuilds.get(key);
+        if (entry != null && entry.expires < System.currentTimeMillis()) {
+            latestBuilds.remove(key);
+            entry = null;
+        }
+        (entry == null ? latestMisses : latestHits).incrementAndGet();
+        return entry == null ? null : entry.build;
+    }
+
+    public void putLatestBuild(String kojiInstanceURL, String tag, String pkg, KojiBuild build) {
+        if (latestTtlMillis > 0) {
+            synchronized (this) {
+                Integer event = lastEvents.get(kojiInstanceURL);
+                latestBuilds.put(key(kojiInstanceURL, tag, pkg), new LatestEntry(tag, build,
+                        System.currentTimeMillis() + latestTtlMillis, event == null ? 0 : event));
+            }
+        }
+        if (build != null && build.isComplete()) {
+            cacheBuild(kojiInstanceURL, build);
+        }
+    }
+
+    /**
+     * Records the latest hub event id known, lookups cached afterwards are considered current as of that event.
+     */
+    public synchronized void noteEvent(String kojiInstanceURL, int eventId) {
+        lastEvents.put(kojiInstanceURL, eventId);
+    }
+
+    /**
+     * Drops latest build lookups of a tag cached before a given hub event, e.g. after the tag was changed by it.
+     * @param eventId Id of the event changing the tag.
+     */
+    public synchronized void invalidateTag(String kojiInstanceURL, String tag, int eventId) {
+        String prefix = kojiInstanceURL + '\n';
+        for (Iterator<Map.Entry<String, LatestEntry>> it = latestBuilds.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, LatestEntry> entry = it.next();
+            LatestEntry latest = entry.getValue();
+            if (entry.getKey().startsWith(prefix) && latest.tag.equals(tag) && latest.eventId < eventId) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        builds.clear();
+        nvrs.clear();
+        latestBuilds.clear();
+    }
+
+    public KojiBuildStore getStore() {
+        return store;
+    }
+
+    /**
+     * Attaches a persistent store, replacing and closing the previous one.
+     */
+    public void setStore(KojiBuildStore store) {
+        KojiBuildStore previous = this.store;
+        this.store = store;
+        if (previous != null && previous != store) {
+            previous.close();
+        }
+    }
+
+    public int getMaxBuilds() {
+        return maxBuilds;
+    }
+
+    public void setMaxBuilds(int maxBuilds) {
+        this.maxBuilds = maxBuilds;
+    }
+
+    public long getLatestTtlMillis() {
+        return latestTtlMillis;
+    }
+
+    /**
+     * @param latestTtlMillis How long latest build lookups are reused, 0 disables their caching.
+     */
+    public void setLatestTtlMillis(long latestTtlMillis) {
+        this.latestTtlMillis = latestTtlMillis;
+    }
+
+    public synchronized int getBuildCount() {
+        return builds.size();
+    }
+
+    public long getBuildHits() {
+        return buildHits.get();
+    }
+
+    public long getBuildMisses() {
+        return buildMisses.get();
+    }
+
+    /**
+     * Build lookups missing in memory but served by the persistent store, included in build hits.
+     */
+    public long getStoreHits() {
+        return storeHits.get();
+    }
+
+    public long getLatestHits() {
+        return latestHits.get();
+    }
+
+    public long getLatestMisses() {
+        return latestMisses.get();
+    }
+
+    /**
+     * @return Share of lookups served from cache, in percent.
+     */
+    public double getHitRate() {
+        long hits = buildHits.get() + latestHits.get();
+        long total = hits + buildMisses.get() + latestMisses.get();
+        return total == 0 ? 0 : hits * 100.0 / total;
+    }
+
+    /**
+     * Human readable summary of cache usage.
+     */
+    public String getStatistics() {
+        return String.format("%d builds cached, build lookups %d hits (%d from disk) / %d misses, latest build lookups %d hits / %d misses, hit rate %.1f%%",
+                getBuildCount(), getBuildHits(), getStoreHits(), getBuildMisses(), getLatestHits(), getLatestMisses(), getHitRate());
+    }
+
+    private static String key(String kojiInstanceURL, String buildId) {
+        return kojiInstanceURL + '\n' + buildId;
+    }
+
+    private static String key(String kojiInstanceURL, String tag, String pkg) {
+        return kojiInstanceURL + '\n' + tag + '\n' + pkg;
+    }
+
+    private static class LatestEntry {
+        private final String tag;
+        private final KojiBuild build;
+        private final long expires;
+        /**
+         * Hub event known when the lookup was cached.
+         */
+        private final int eventId;
+
+        LatestEntry(String tag, KojiBuild build, long expires, int eventId) {
+            this.tag = tag;
+            this.build = build;
+            this.expires = expires;
+            this.eventId = eventId;
+        }
+    }
+}
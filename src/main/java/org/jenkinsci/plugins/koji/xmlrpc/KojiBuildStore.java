@@ -0,0 +1,313 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Persistent store of completed Koji builds, surviving controller restarts.
+ *
+ * Builds are appended to a log split into segment files (builds-00001.log, ...). Every record is
+ * [int length][UTF hub URL][KojiBuild binary form], where the binary form starts with build id and NVR components.
+ * On first access only these record headers are scanned to build an in-memory index of hub + id / NVR to file
+ * positions, the builds themselves are read on demand. A partially written record at the end of the last segment (e.g.
+ * after a crash) is cut off.
+ *
+ * The store is bounded: once more than the maximum number of segments exist, the oldest segment is deleted together
+ * with its index entries. Dropped builds are simply fetched from the hub again when next needed.
+ */
+public class KojiBuildStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(KojiBuildStore.class);
+
+    /**
+     * Segments are rolled over once they reach this size.
+     */
+    static final long MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * Segments kept, limiting the store to 128 MB.
+     */
+    static final int MAX_SEGMENTS = 8;
+
+    private static final String SEGMENT_PREFIX = "builds-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final long maxSegmentSize;
+    private final int maxSegments;
+    /**
+     * Open segments, oldest first.
+     */
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    /**
+     * Record positions keyed by hub and build id or NVR.
+     */
+    private Map<String, Location> index;
+
+    /**
+     * @param directory Directory holding segment files, created if missing.
+     */
+    public KojiBuildStore(File directory) {
+        this(directory, MAX_SEGMENT_SIZE, MAX_SEGMENTS);
+    }
+
+    KojiBuildStore(File directory, long maxSegmentSize, int maxSegments) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Reads a build from the store.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     * @param buildId Build id or NVR.
+     * @return Stored build or null.
+     */
+    public synchronized KojiBuild get(String kojiInstanceURL, String buildId) {
+        try {
+            ensureIndexed();
+            Location location = index.get(key(kojiInstanceURL, buildId));
+            if (location == null) {
+                return null;
+            }
+
+            RandomAccessFile segment = location.segment.file;
+            segment.seek(location.offset);
+            byte[] record = new byte[segment.readInt()];
+            segment.readFully(record);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            in.readUTF();
+            return KojiBuild.readFrom(in);
+        } catch (IOException e) {
+            logger.warn("Unable to read Koji build " + buildId + " from " + directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Appends a build unless already stored. Only completed builds are stored, others may still change.
+     */
+    public synchronized void put(String kojiInstanceURL, KojiBuild build) {
+        if (build == null || !build.isComplete()) {
+            return;
+        }
+        try {
+            ensureIndexed();
+            String idKey = key(kojiInstanceURL, String.valueOf(build.getId()));
+            if (index.containsKey(idKey)) {
+                return;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeUTF(kojiInstanceURL);
+            build.writeTo(out);
+            out.close();
+            byte[] record = bytes.toByteArray();
+            int length = record.length - 4;
+            record[0] = (byte) (length >>> 24);
+            record[1] = (byte) (length >>> 16);
+            record[2] = (byte) (length >>> 8);
+            record[3] = (byte) length;
+
+            Segment segment = segments.isEmpty() ? null : segments.getLast();
+            if (segment == null || segment.file.length() >= maxSegmentSize) {
+                segment = openSegment(segment == null ? 1 : segment.number + 1);
+                while (segments.size() > maxSegments) {
+                    deleteSegment(segments.removeFirst());
+                }
+            }
+            long offset = segment.file.length();
+            segment.file.seek(offset);
+            // single write, so a crash leaves at most one partial record at the end
+            segment.file.write(record);
+
+            Location location = new Location(segment, offset);
+            index.put(idKey, location);
+            index.put(key(kojiInstanceURL, build.getNvr()), location);
+        } catch (IOException e) {
+            logger.warn("Unable to store Koji build " + build + " in " + directory, e);
+        }
+    }
+
+    public synchronized int size() {
+        return index == null ? 0 : index.size() / 2;
+    }
+
+    /**
+     * @return Number of segment files in use.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            closeQuietly(segment);
+        }
+        segments.clear();
+        index = null;
+    }
+
+    /**
+     * Opens existing segments and scans record headers, done once on first access.
+     */
+    private void ensureIndexed() throws IOException {
+        if (index != null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        index = new HashMap<String, Location>();
+        String[] names = directory.list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        // zero padded numbers, so name order is segment order
+        Arrays.sort(names);
+        for (String name : names) {
+            int number;
+            try {
+                number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            scanSegment(openSegment(number));
+        }
+        while (segments.size() > maxSegments) {
+            deleteSegment(segments.removeFirst());
+        }
+    }
+
+    /**
+     * Reads record headers of a segment sequentially through a buffer, the rest of every record is skipped.
+     */
+    private void scanSegment(Segment segment) throws IOException {
+        long length = segment.file.length();
+        long offset = 0;
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(segment.path)));
+        DataInputStream in = new DataInputStream(counting);
+        try {
+            while (offset + 4 <= length) {
+                int recordLength = in.readInt();
+                long next = offset + 4 + recordLength;
+                if (recordLength <= 0 || next > length) {
+                    break;
+                }
+                String kojiInstanceURL = in.readUTF();
+                int id = in.readInt();
+                String nvr = readHeaderString(in) + "-" + readHeaderString(in) + "-" + readHeaderString(in);
+                long remaining = next - counting.getByteCount();
+                if (remaining < 0) {
+                    // header longer than the record, not a record written by put()
+                    break;
+                }
+                skipFully(in, (int) remaining);
+
+                Location location = new Location(segment, offset);
+                index.put(key(kojiInstanceURL, String.valueOf(id)), location);
+                index.put(key(kojiInstanceURL, nvr), location);
+                offset = next;
+            }
+        } catch (EOFException e) {
+            // truncated record, cut off below
+        } finally {
+            in.close();
+        }
+        if (offset < length) {
+            logger.warn("Dropping incomplete record at the end of Koji build store segment " + segment.path);
+            segment.file.setLength(offset);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes(bytes);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static String readHeaderString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        File path = new File(directory, String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        Segment segment = new Segment(number, path, new RandomAccessFile(path, "rw"));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Deletes a segment no longer in the list of segments, along with index entries pointing into it.
+     */
+    private void deleteSegment(Segment segment) {
+        for (Iterator<Location> it = index.values().iterator(); it.hasNext(); ) {
+            if (it.next().segment == segment) {
+                it.remove();
+            }
+        }
+        closeQuietly(segment);
+        if (!segment.path.delete()) {
+            logger.warn("Unable to delete Koji build store segment " + segment.path);
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.file.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    private static String key(String kojiInstanceURL, String buildId) {
+        return kojiInstanceURL + '\n' + buildId;
+    }
+
+    private static class Segment {
+        private final int number;
+        private final File path;
+        private final RandomAccessFile file;
+
+        Segment(int number, File path, RandomAccessFile file) {
+            this.number = number;
+            this.path = path;
+            this.file = file;
+        }
+    }
+
+    private static class Location {
+        private final Segment segment;
+        private final long offset;
+
+        Location(Segment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
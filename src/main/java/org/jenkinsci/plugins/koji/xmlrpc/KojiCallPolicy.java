@@ -0,0 +1,206 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Timeouts and retry rules applied by KojiClient to every hub call.
+ *
+ * Every call gets a connect timeout and a per-method reply timeout, so a hanging hub can not block builds forever.
+ * Read-only methods (get*, list*, query*, ...) failing on transport level are retried a bounded number of times with
+ * jittered exponential backoff. Faults reported by the hub itself and calls changing state on the hub are never
+ * retried.
+ *
+ * Responses are requested gzip compressed, the large XML of listTagged and similar shrinks 10-20x and is inflated
+ * while being parsed. Compressing requests is optional, as not every hub setup accepts compressed request bodies.
+ */
+public class KojiCallPolicy {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    public static final int DEFAULT_REPLY_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BACKOFF_MILLIS = 500;
+
+    /**
+     * Prefixes of Koji methods that only read, safe to call again.
+     */
+    private static final String[] READ_PREFIXES = {"get", "list", "query", "show", "hello", "echo", "check"};
+    /**
+     * Read methods answering differently per session.
+     */
+    private static final List<String> SESSION_METHODS = Arrays.asList("getLoggedInUser", "showSession", "getPerms",
+            "getUserPerms", "hasPerm");
+
+    /**
+     * Singleton.
+     */
+    private static final KojiCallPolicy instance = new KojiCallPolicy();
+
+    private final ConcurrentMap<String, Integer> replyTimeouts = new ConcurrentHashMap<String, Integer>();
+    private final Random random = new Random();
+
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int replyTimeoutMillis = DEFAULT_REPLY_TIMEOUT_MILLIS;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+    private volatile boolean compressResponses = true;
+    private volatile boolean compressRequests;
+
+    private KojiCallPolicy() {
+        // cheap calls should answer quickly, bulk queries may legitimately take long
+        replyTimeouts.put("hello", 30 * 1000);
+        replyTimeouts.put("getLastEvent", 30 * 1000);
+        replyTimeouts.put("getLoggedInUser", 30 * 1000);
+        replyTimeouts.put("getTaskInfo", 60 * 1000);
+        replyTimeouts.put("listTagged", 15 * 60 * 1000);
+        replyTimeouts.put("queryHistory", 15 * 60 * 1000);
+        replyTimeouts.put("multiCall", 15 * 60 * 1000);
+    }
+
+    public static KojiCallPolicy getInstance() {
+        return instance;
+    }
+
+    /**
+     * Copy of the client configuration with timeouts and compression for a method.
+     */
+    XmlRpcClientConfigImpl configure(XmlRpcClientConfigImpl config, String methodName) {
+        XmlRpcClientConfigImpl callConfig = config.cloneMe();
+        callConfig.setConnectionTimeout(connectTimeoutMillis);
+        callConfig.setReplyTimeout(getReplyTimeoutMillis(methodName));
+        callConfig.setGzipRequesting(compressResponses);
+        callConfig.setGzipCompressing(compressRequests);
+        return callConfig;
+    }
+
+    /**
+     * A call may be retried if it only reads. multiCall is read-only if all calls within it are.
+     */
+    boolean isIdempotent(String methodName, List<Object> params) {
+        if (!"multiCall".equals(methodName)) {
+            return isReadMethod(methodName);
+        }
+        for (Object call : (List<?>) params.get(0)) {
+            if (!isReadMethod(String.valueOf(((Map<?, ?>) call).get("methodName")))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Identical concurrent calls may share one request if they only read and do not depend on the session.
+     */
+    boolean isShareable(String methodName, List<Object> params) {
+        return !SESSION_METHODS.contains(methodName) && isIdempotent(methodName, params);
+    }
+
+    private static boolean isReadMethod(String methodName) {
+        for (String prefix : READ_PREFIXES) {
+            if (methodName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Transport failures (connection refused, timeouts, HTTP 5xx) mean the hub did not handle the call, as opposed to
+     * faults the hub returned.
+     */
+    static boolean isTransportFailure(XmlRpcException e) {
+        if (e instanceof XmlRpcHttpTransportException) {
+            return ((XmlRpcHttpTransportException) e).getStatusCode() >= 500;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Exponential backoff with full jitter, so retrying builds do not hit the hub at the same time.
+     * @param attempt Number of the failed attempt, starting with 1.
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = backoffMillis << Math.min(attempt - 1, 10);
+        synchronized (random) {
+            return ceiling / 2 + (long) (random.nextDouble() * ceiling / 2);
+        }
+    }
+
+    public int getReplyTimeoutMillis(String methodName) {
+        Integer timeout = replyTimeouts.get(methodName);
+        return timeout != null ? timeout : replyTimeoutMillis;
+    }
+
+    /**
+     * Overrides the reply timeout of a single method.
+     */
+    public void setReplyTimeoutMillis(String methodName, int timeoutMillis) {
+        replyTimeouts.put(methodName, timeoutMillis);
+    }
+
+    /**
+     * Reply timeout of methods without own setting.
+     */
+    public void setReplyTimeoutMillis(int replyTimeoutMillis) {
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts Attempts of a read-only call including the first one, 1 disables retries.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public void setBackoffMillis(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public boolean isCompressResponses() {
+        return compressResponses;
+    }
+
+    /**
+     * @param compressResponses Ask the hub for gzip compressed responses.
+     */
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    /**
+     * @param compressRequests Send request bodies gzip compressed.
+     */
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+}
@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker for a single Koji hub, owned by its KojiClientPool.
+ *
+ * After FAILURE_THRESHOLD consecutive transport failures the circuit opens and calls fail immediately instead of
+ * waiting for timeouts. Once the open period passes a single trial call is let through (half-open): if it succeeds the
+ * circuit closes, otherwise it opens again. Any answer of the hub, including faults, counts as success. Calls that
+ * never reached the hub, e.g. timing out while waiting for a pooled connection, count as neither.
+ */
+public class KojiCircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String kojiInstanceURL;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialRunning;
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openMillis = DEFAULT_OPEN_MILLIS;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    KojiCircuitBreaker(String kojiInstanceURL) {
+        this.kojiInstanceURL = kojiInstanceURL;
+    }
+
+    /**
+     * Asks for permission to call the hub.
+     * @return True if the call is the trial call of a half-open circuit, endTrial() has to be called once it is done.
+     * @throws XmlRpcException if the circuit is open.
+     */
+    synchronized boolean acquire() throws XmlRpcException {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialRunning)) {
+            rejected.incrementAndGet();
+            throw new XmlRpcException("Koji hub " + kojiInstanceURL + " is unavailable, not calling it for "
+                    + openMillis / 1000 + "s after " + consecutiveFailures + " failures");
+        }
+        calls.incrementAndGet();
+        if (state == State.HALF_OPEN) {
+            trialRunning = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ends the trial call, whatever its outcome. If neither success nor failure was recorded, the circuit stays
+     * half-open and the next call becomes the trial.
+     */
+    synchronized void endTrial() {
+        trialRunning = false;
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        trialRunning = false;
+    }
+
+    synchronized void recordFailure() {
+        failures.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialRunning = false;
+            opened.incrementAndGet();
+        }
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Calls failed immediately because the circuit was open.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * How many times the circuit opened.
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+}
@@ -1,38 +1,67 @@
 package org.jenkinsci.plugins.koji.xmlrpc;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
 import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
-import org.apache.xmlrpc.client.XmlRpcCommonsTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.*;
+import javax.net.ssl.SSLContext;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Singleton used for XML-RPC communication with Koji.
+ * Client used for XML-RPC communication with Koji.
+ *
+ * Every KojiClient holds its own session state (the authenticated hub URL), so concurrently running builds never see
+ * each other's sessions. The actual XML-RPC clients and HTTP connections are shared per hub through KojiClientPool.
+ *
+ * The *Async variants of the read calls return immediately with a future. They are run by the pool's executor with at
+ * most as many threads as calls allowed in flight, so callers can have any number of calls outstanding without
+ * blocking a thread each. Futures fail with the XmlRpcException of the call.
+ *
+ * Besides plain username / password, clients log in with a client certificate (sslLogin) or Kerberos (GSSAPI), both
+ * against the hub's ssllogin URL, the way Koji CLI does. Sessions of all three are cached and renewed the same way.
  */
 public class KojiClient {
 
+    private static final Logger logger = LoggerFactory.getLogger(KojiClient.class);
+
     /**
-     * Internal XML-RPC client instance not exposed for direct calls. Everything needs to go through KojiClient.
+     * Koji fault codes signalling an invalid session.
      */
-    private XmlRpcClient koji;
+    private static final int FAULT_AUTH_ERROR = 1002;
+    private static final int FAULT_AUTH_EXPIRED = 1007;
+
     /**
-     * Singleton.
+     * Client configuration owned by this instance. Carries the session parameters once logged in.
      */
-    private static KojiClient instance;
+    private volatile XmlRpcClientConfigImpl config;
     /**
      * Koji hub Instance URL. Must end with "kojihub" suffix or leading to other custom URL pointing directly to koji server XML-RPC hub.
      */
-    private String kojiInstanceURL;
+    private final String kojiInstanceURL;
+    /**
+     * Session currently used by this client, null for anonymous access.
+     */
+    private volatile KojiSession session;
+    /**
+     * Credentials kept for transparent login after session expiry. Together they identify the session in
+     * KojiSessionCache, see sessionIdentity().
+     */
+    private String userName;
+    private String password;
+    private String sslCertificatePath;
+    private KojiKerberos kerberos;
 
     public String getKojiInstanceURL() {
         return kojiInstanceURL;
@@ -40,64 +69,185 @@ public class KojiClient {
 
     private KojiClient(String kojiInstanceURL) throws MalformedURLException {
         this.kojiInstanceURL = kojiInstanceURL;
-        this.koji = connect(kojiInstanceURL);
+        this.config = createConfig(kojiInstanceURL);
+    }
+
+    /**
+     * Pool of XML-RPC clients for the hub. Internal XML-RPC clients are not exposed for direct calls, everything needs
+     * to go through KojiClient.
+     *
+     * Looked up for every call rather than kept, so long-lived clients (e.g. of KojiTaskWatcher) get a new pool after
+     * the old one was removed with KojiClientPool.remove(). Clients logged in with a certificate use that certificate's
+     * pool, never the one shared with other logins.
+     */
+    private KojiClientPool pool() {
+        return KojiClientPool.forHub(kojiInstanceURL, sslCertificatePath);
     }
 
     /**
-     * Get the KojiClient Singleton instance. If user changes global config with Koji Hub URL, it's eventually modified here.
+     * Get a new KojiClient for the given hub. Each client has isolated session state, while connections to the hub
+     * are pooled and shared by all clients of the same hub.
      *
      * @param kojiInstanceURL URL of remote Koji instance.
      */
     public static KojiClient getKojiClient(String kojiInstanceURL) throws MalformedURLException {
-        if (instance == null)
-            instance = new KojiClient(kojiInstanceURL);
-        else {
-            if (instance.getKojiInstanceURL() != kojiInstanceURL) {
-                instance.setServerURL(kojiInstanceURL);
-            }
-        }
-
-        return instance;
+        return new KojiClient(kojiInstanceURL);
     }
 
     /**
-     * Login to XML-RPC service using plain authentication. This authentication is the only supported via Koji XML-RPC API.
+     * Login to XML-RPC service using plain authentication.
+     *
+     * Sessions are shared across builds through KojiSessionCache, a new hub session is only created if there is no
+     * valid cached one for this hub and user.
      * @param userName Username
      * @param password Password
      * @return KojiSession.
      * @throws XmlRpcException In case issue with login happens.
      */
     public KojiSession login(String userName, String password) throws XmlRpcException {
-        List<Object> params = new ArrayList<Object>();
-        params.add(userName);
-        params.add(password);
+        this.userName = userName;
+        this.password = password;
+        this.sslCertificatePath = null;
+        this.kerberos = null;
 
-        Map<String, ?> session = null;
+        return cachedOrNewSession();
+    }
 
-        try {
-            session = (Map<String, ?>) koji.execute("login", params);
-        } catch (XmlRpcException e) {
-            throw e;
+    /**
+     * Login with a client certificate, like "koji --authtype=ssl". The hub must be https, calls of this client are
+     * then made on a pool of connections using the certificate's cached SSLContext.
+     * @param certificatePath PEM file with client certificate and private key, see KojiSslContextCache.
+     * @return KojiSession.
+     * @throws XmlRpcException In case issue with login happens.
+     */
+    public KojiSession sslLogin(String certificatePath) throws XmlRpcException {
+        SSLContext context = KojiSslContextCache.getInstance().get(certificatePath);
+        KojiClientPool.forHub(kojiInstanceURL, certificatePath).setSslContext(context);
+        this.userName = "ssl:" + certificatePath;
+        this.password = null;
+        this.sslCertificatePath = certificatePath;
+        this.kerberos = null;
+
+        return cachedOrNewSession();
+    }
+
+    /**
+     * Login with Kerberos, like "koji --authtype=kerberos".
+     * @param principal Kerberos principal, null for the default principal of the ticket cache.
+     * @param keytab Keytab of the principal, null to use the ticket cache.
+     * @return KojiSession.
+     * @throws XmlRpcException In case issue with login happens.
+     */
+    public KojiSession gssapiLogin(String principal, String keytab) throws XmlRpcException {
+        this.kerberos = KojiKerberos.get(principal, keytab);
+        this.userName = "krb:" + kerberos.getPrincipal();
+        this.password = null;
+        this.sslCertificatePath = null;
+
+        return cachedOrNewSession();
+    }
+
+    private KojiSession cachedOrNewSession() throws XmlRpcException {
+        KojiSessionCache sessionCache = KojiSessionCache.getInstance();
+        KojiSession cached = sessionCache.get(kojiInstanceURL, sessionIdentity());
+        if (cached != null) {
+            useSession(cached);
+            if (!cached.needsValidation(sessionCache.getValidationIntervalMillis()) || isSessionValid()) {
+                sessionCache.recordHit();
+                return cached;
+            }
+            sessionCache.invalidate(kojiInstanceURL, sessionIdentity(), cached);
         }
 
-        KojiSession kojiSession = new KojiSession(kojiInstanceURL, session);
+        sessionCache.recordMiss();
+        return newSession();
+    }
 
-        setServerURL(kojiSession.getAuthenticatedHubURL());
+    /**
+     * Identity the session is cached under in KojiSessionCache. Password logins only share sessions of the same
+     * password, certificate and Kerberos logins are identified by certificate path and principal.
+     */
+    private String sessionIdentity() {
+        return password != null ? KojiSessionCache.passwordIdentity(userName, password) : userName;
+    }
+
+    /**
+     * Performs the actual login call, creating a new hub session which replaces the cached one.
+     */
+    private KojiSession newSession() throws XmlRpcException {
+        session = null;
+        Map<String, ?> sessionInfo;
+        if (password != null) {
+            // the login call itself must go to the plain hub URL
+            setServerURL(kojiInstanceURL);
+            List<Object> params = new ArrayList<Object>();
+            params.add(userName);
+            params.add(password);
+            sessionInfo = (Map<String, ?>) execute("login", params);
+        } else {
+            // hub checks the certificate or the Negotiate header on this URL only
+            setServerURL(kojiInstanceURL.replaceAll("/+$", "") + "/ssllogin");
+            if (sslCertificatePath != null) {
+                pool().setSslContext(KojiSslContextCache.getInstance().get(sslCertificatePath));
+            } else {
+                KojiTransportFactory.negotiateWith(kerberos);
+            }
+            try {
+                sessionInfo = (Map<String, ?>) execute("sslLogin", new ArrayList<Object>());
+            } finally {
+                KojiTransportFactory.clearNegotiate();
+                setServerURL(kojiInstanceURL);
+            }
+        }
+
+        KojiSession kojiSession = new KojiSession(kojiInstanceURL, sessionInfo);
+        KojiSessionCache.getInstance().put(kojiInstanceURL, sessionIdentity(), kojiSession);
+        useSession(kojiSession);
 
         return kojiSession;
     }
+
+    private void useSession(KojiSession kojiSession) {
+        setServerURL(kojiSession.getAuthenticatedHubURL());
+        session = kojiSession;
+    }
+
+    /**
+     * Asks the hub whether the current session is still logged in.
+     * @return True if hub recognizes the session.
+     */
+    private boolean isSessionValid() {
+        try {
+            Object user = invoke("getLoggedInUser", new ArrayList<Object>(), null, null);
+            if (user == null) {
+                return false;
+            }
+        } catch (XmlRpcException e) {
+            return false;
+        }
+
+        session.markValidated();
+        return true;
+    }
+
     /**
      * Gets latest builds.
      *
      * @param tag Koji tag
      * @param pkg Koji package
-     * @return Map of properties for latest build.
+     * @return Latest build.
      */
-    public Map<String, String> getLatestBuilds(String tag, String pkg) throws XmlRpcException {
+    public KojiBuild getLatestBuilds(String tag, String pkg) throws XmlRpcException {
         // Koji XML-RPC API
         // getLatestBuilds(tag, event=None, package=None, type=None)
         // description: List latest builds for tag (inheritance enabled)
 
+        KojiBuildCache cache = KojiBuildCache.getInstance();
+        KojiBuild cached = cache.getLatestBuild(kojiInstanceURL, tag, pkg);
+        if (cached != null) {
+            return cached;
+        }
+
         List<Object> params = new ArrayList<Object>();
         params.add(tag);
         // Event is of no interest to us.
@@ -105,30 +255,126 @@ public class KojiClient {
         params.add(pkg);
 
         Object[] latestBuilds = null;
-        Map<String, String> buildInfo = null;
+        KojiBuild buildInfo = null;
         try {
-            latestBuilds = (Object[]) koji.execute("getLatestBuilds", params);
+            latestBuilds = (Object[]) execute("getLatestBuilds", params, KojiBuild.MAPPER, null);
             if (latestBuilds == null) {
                 throw new XmlRpcException("empty");
             }
             if (latestBuilds.length == 0) {
                 throw new XmlRpcException("empty");
             }
-            buildInfo = (Map<String, String>) latestBuilds[0];
+            buildInfo = (KojiBuild) latestBuilds[0];
         } catch (XmlRpcException e) {
             throw e;
         }
 
+        cache.putLatestBuild(kojiInstanceURL, tag, pkg, buildInfo);
         return buildInfo;
     }
 
+    /**
+     * Gets latest builds for many packages in one tag, sending all lookups as multiCall batches.
+     *
+     * @param tag Koji tag
+     * @param pkgs Koji packages
+     * @return Map of package name to its latest build, in order of pkgs. Packages without any build in the tag are
+     * left out.
+     */
+    public Map<String, KojiBuild> getLatestBuilds(String tag, List<String> pkgs) throws XmlRpcException {
+        KojiBuildCache cache = KojiBuildCache.getInstance();
+        Map<String, KojiBuild> cachedBuilds = new HashMap<String, KojiBuild>();
+        KojiMultiCall multiCall = multiCall();
+        Map<String, KojiMultiCall.Result> pending = new LinkedHashMap<String, KojiMultiCall.Result>();
+        for (String pkg : pkgs) {
+            KojiBuild cached = cache.getLatestBuild(kojiInstanceURL, tag, pkg);
+            if (cached != null) {
+                cachedBuilds.put(pkg, cached);
+                continue;
+            }
+            List<Object> params = new ArrayList<Object>();
+            params.add(tag);
+            params.add(null);
+            params.add(pkg);
+            pending.put(pkg, multiCall.add("getLatestBuilds", params));
+        }
+        multiCall.flush();
+
+        Map<String, KojiBuild> latestBuilds = new LinkedHashMap<String, KojiBuild>();
+        for (String pkg : pkgs) {
+            KojiBuild build = cachedBuilds.get(pkg);
+            KojiMultiCall.Result result = pending.get(pkg);
+            if (result != null) {
+                Object[] builds = (Object[]) result.get();
+                if (builds != null && builds.length > 0) {
+                    build = KojiBuild.fromStruct((Map<String, ?>) builds[0]);
+                    cache.putLatestBuild(kojiInstanceURL, tag, pkg, build);
+                }
+            }
+            if (build != null) {
+                latestBuilds.put(pkg, build);
+            }
+        }
+
+        return latestBuilds;
+    }
+
+    /**
+     * Gets latest builds of all packages in a tag, inheritance included.
+     *
+     * @param tag Koji tag
+     * @return Latest build of every package with a build in the tag.
+     */
+    public List<KojiBuild> listLatestBuilds(String tag) throws XmlRpcException {
+        List<Object> params = new ArrayList<Object>();
+        params.add(tag);
+        params.add(null);
+        params.add(null);
+
+        Object[] latestBuilds = (Object[]) execute("getLatestBuilds", params, KojiBuild.MAPPER, null);
+
+        List<KojiBuild> results = new ArrayList<KojiBuild>();
+        if (latestBuilds != null) {
+            for (Object build : latestBuilds) {
+                results.add((KojiBuild) build);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Starts a new batch of calls sent as Koji multiCall, using default batch size.
+     */
+    public KojiMultiCall multiCall() {
+        return new KojiMultiCall(this, KojiMultiCall.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Starts a new batch of calls sent as Koji multiCall.
+     * @param maxBatchSize Maximum of calls sent in one request.
+     */
+    public KojiMultiCall multiCall(int maxBatchSize) {
+        return new KojiMultiCall(this, maxBatchSize);
+    }
+
+    /**
+     * Sends prepared call structs as a single multiCall request.
+     * @return Array of per-call results or faults.
+     */
+    Object[] executeMultiCall(List<Object> calls) throws XmlRpcException {
+        List<Object> params = new ArrayList<Object>();
+        params.add(calls);
+
+        return (Object[]) execute("multiCall", params);
+    }
+
     /**
      * Retrieves information about a given build.
      *
      * @param buildId BuildId can be Name-Version-Release (NVR) or numeric buildId.
-     * @return A map containing all information about given build.
+     * @return All information about given build, null if there is no such build.
      */
-    public Map<String, String> getBuildInfo(String buildId) throws XmlRpcException {
+    public KojiBuild getBuildInfo(String buildId) throws XmlRpcException {
      /* XML-RPC method information
         getBuild(buildInfo, strict=False)
         description: Return information about a build.  buildID may be either
@@ -157,22 +403,169 @@ public class KojiClient {
         If there is no build matching the buildInfo given, and strict is specified,
                 raise an error.  Otherwise return None. */
 
+        KojiBuildCache cache = KojiBuildCache.getInstance();
+        KojiBuild cached = cache.getBuild(kojiInstanceURL, buildId);
+        if (cached != null) {
+            return cached;
+        }
+
         List<Object> params = new ArrayList<Object>();
         params.add(buildId);
-        Map<String, String> buildInfo;
+        KojiBuild buildInfo;
 
         try {
-            buildInfo = (Map<String, String>) koji.execute("getBuild", params);
+            buildInfo = (KojiBuild) execute("getBuild", params, KojiBuild.MAPPER, null);
         } catch (XmlRpcException e) {
             throw e;
         }
 
         if (buildInfo == null) {
-            throw new XmlRpcException("empty");
+            return null;
         }
 
+        cache.putBuild(kojiInstanceURL, buildInfo);
         return buildInfo;
+    }
 
+    /**
+     * Lists maven archives (files) of a build.
+     *
+     * @param buildId Numeric build id.
+     * @return Archives of the build, empty if it has none.
+     */
+    public List<KojiArchive> listArchives(int buildId) throws XmlRpcException {
+        // Koji XML-RPC API
+        // listArchives(buildID=None, buildrootID=None, componentBuildrootID=None, hostID=None, type=None, ...)
+        // description: Retrieve information about archives.
+
+        List<Object> params = new ArrayList<Object>();
+        params.add(buildId);
+        params.add(null);
+        params.add(null);
+        params.add(null);
+        params.add("maven");
+
+        Object[] archives = (Object[]) execute("listArchives", params, KojiArchive.MAPPER, null);
+
+        List<KojiArchive> results = new ArrayList<KojiArchive>();
+        if (archives != null) {
+            for (Object archive : archives) {
+                results.add((KojiArchive) archive);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Submits a maven build. Requires a logged in session.
+     *
+     * @param sources Sources in format of git+https://[repo]#[hash]
+     * @param target Target to which build is tagged.
+     * @param scratch Scratch builds are not tagged and not stored permanently.
+     * @return Id of the created task, returned right after submission.
+     */
+    public int mavenBuild(String sources, String target, boolean scratch) throws XmlRpcException {
+        // Koji XML-RPC API
+        // mavenBuild(url, target, opts=None, priority=None, channel='maven')
+        // description: Create a Maven build task
+
+        if (session == null) {
+            throw new XmlRpcException("Koji maven build requires a logged in session");
+        }
+
+        // Tests are always skipped in Koji, same as with Koji CLI.
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("maven.test.skip", "true");
+        Map<String, Object> opts = new HashMap<String, Object>();
+        opts.put("properties", properties);
+        if (scratch) {
+            opts.put("scratch", true);
+        }
+
+        List<Object> params = new ArrayList<Object>();
+        params.add(sources);
+        params.add(target);
+        params.add(opts);
+
+        return (Integer) execute("mavenBuild", params);
+    }
+
+    /**
+     * @return True if calls are made within a hub session.
+     */
+    public boolean isLoggedIn() {
+        return session != null;
+    }
+
+    /**
+     * Retrieves information about a task.
+     *
+     * @param taskId Numeric task id.
+     * @return Task or null if there is no such task.
+     */
+    public KojiTask getTaskInfo(int taskId) throws XmlRpcException {
+        // Koji XML-RPC API
+        // getTaskInfo(task_id, request=False)
+        // description: Get information about a task
+
+        List<Object> params = new ArrayList<Object>();
+        params.add(taskId);
+
+        return (KojiTask) execute("getTaskInfo", params, KojiTask.MAPPER, null);
+    }
+
+    /**
+     * Retrieves information about many tasks, sending all lookups as multiCall batches.
+     *
+     * @param taskIds Numeric task ids.
+     * @return Map of task id to task, in order of taskIds. Unknown tasks are left out.
+     * @throws XmlRpcException if the multiCall failed or any single lookup faulted.
+     */
+    public Map<Integer, KojiTask> getTaskInfo(List<Integer> taskIds) throws XmlRpcException {
+        Map<Integer, XmlRpcException> faults = new LinkedHashMap<Integer, XmlRpcException>();
+        Map<Integer, KojiTask> tasks = getTaskInfo(taskIds, faults);
+        if (!faults.isEmpty()) {
+            throw faults.values().iterator().next();
+        }
+        return tasks;
+    }
+
+    /**
+     * Retrieves information about many tasks, sending all lookups as multiCall batches. A fault of a single lookup only
+     * affects that task.
+     *
+     * @param taskIds Numeric task ids.
+     * @param faults Receives the fault of every task whose lookup failed.
+     * @return Map of task id to task, in order of taskIds. Unknown and faulted tasks are left out.
+     * @throws XmlRpcException if the multiCall as a whole failed.
+     */
+    public Map<Integer, KojiTask> getTaskInfo(List<Integer> taskIds, Map<Integer, XmlRpcException> faults)
+            throws XmlRpcException {
+        KojiMultiCall multiCall = multiCall();
+        Map<Integer, KojiMultiCall.Result> pending = new LinkedHashMap<Integer, KojiMultiCall.Result>();
+        for (Integer taskId : taskIds) {
+            List<Object> params = new ArrayList<Object>();
+            params.add(taskId);
+            pending.put(taskId, multiCall.add("getTaskInfo", params));
+        }
+        multiCall.flush();
+
+        Map<Integer, KojiTask> tasks = new LinkedHashMap<Integer, KojiTask>();
+        for (Map.Entry<Integer, KojiMultiCall.Result> entry : pending.entrySet()) {
+            Object task;
+            try {
+                task = entry.getValue().get();
+            } catch (XmlRpcException e) {
+                faults.put(entry.getKey(), e);
+                continue;
+            }
+            if (task instanceof Map) {
+                tasks.put(entry.getKey(), KojiTask.fromStruct((Map<String, ?>) task));
+            }
+        }
+
+        return tasks;
     }
 
     /**
@@ -183,9 +576,9 @@ public class KojiClient {
     public String getSession() {
         String result = null;
         try {
-            result = (String) koji.execute("showSession", new Object[]{});
+            result = (String) execute("showSession", new ArrayList<Object>());
         } catch (XmlRpcException e) {
-            e.printStackTrace();
+            logger.warn("Unable to get Koji session from " + kojiInstanceURL + ": " + e.getMessage());
         }
 
         return result;
@@ -195,15 +588,33 @@ public class KojiClient {
      * Method for detailed queries.
      * @param buildParams Accepts BuildParams object holding various properties.
      */
-    public List<Map<String, String>> listTaggedBuilds(BuildParams buildParams) throws XmlRpcException {
+    public List<KojiBuild> listTaggedBuilds(BuildParams buildParams) throws XmlRpcException {
+        final List<KojiBuild> results = new ArrayList<KojiBuild>();
+
+        listTaggedBuilds(buildParams, new BuildHandler() {
+            public void handleBuild(KojiBuild build) {
+                results.add(build);
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Streaming variant of detailed queries. Builds are passed to the handler one at a time while the response is
+     * being parsed, so memory use does not grow with the size of the tag.
+     * @param buildParams Accepts BuildParams object holding various properties.
+     * @param handler Receives every build tagged into the tag.
+     * @return Number of builds handled.
+     */
+    public int listTaggedBuilds(BuildParams buildParams, final BuildHandler handler) throws XmlRpcException {
         // Koji XML-RPC API
         // listTagged(tag, event=None, inherit=False, prefix=None, latest=False, package=None, owner=None, type=None)
         // description: List builds tagged with tag
 
         List<Object> params = new ArrayList<Object>();
         params.add(buildParams.getTag());
-        // Event is of no interest to us.
-        params.add(null);
+        params.add(buildParams.getEvent());
         params.add(false);
         params.add(null);
         params.add(buildParams.isLatest());
@@ -211,26 +622,224 @@ public class KojiClient {
         params.add(buildParams.getOwner());
         params.add(buildParams.getType());
 
-        Object[] objects = null;
+        final int[] count = new int[1];
+        execute("listTagged", params, KojiBuild.MAPPER, new MyTypeFactory.ElementHandler() {
+            public void handleElement(Object element) {
+                handler.handleBuild((KojiBuild) element);
+                count[0]++;
+            }
+        });
+
+        return count[0];
+    }
+
+    /**
+     * Asynchronous variant of getBuildInfo(String).
+     */
+    public ListenableFuture<KojiBuild> getBuildInfoAsync(final String buildId) {
+        return submit(new Callable<KojiBuild>() {
+            public KojiBuild call() throws XmlRpcException {
+                return getBuildInfo(buildId);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of getLatestBuilds(String, String).
+     */
+    public ListenableFuture<KojiBuild> getLatestBuildsAsync(final String tag, final String pkg) {
+        return submit(new Callable<KojiBuild>() {
+            public KojiBuild call() throws XmlRpcException {
+                return getLatestBuilds(tag, pkg);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of getLatestBuilds(String, List).
+     */
+    public ListenableFuture<Map<String, KojiBuild>> getLatestBuildsAsync(final String tag, final List<String> pkgs) {
+        return submit(new Callable<Map<String, KojiBuild>>() {
+            public Map<String, KojiBuild> call() throws XmlRpcException {
+                return getLatestBuilds(tag, pkgs);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of listLatestBuilds(String).
+     */
+    public ListenableFuture<List<KojiBuild>> listLatestBuildsAsync(final String tag) {
+        return submit(new Callable<List<KojiBuild>>() {
+            public List<KojiBuild> call() throws XmlRpcException {
+                return listLatestBuilds(tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of listTaggedBuilds(BuildParams).
+     */
+    public ListenableFuture<List<KojiBuild>> listTaggedBuildsAsync(final BuildParams buildParams) {
+        return submit(new Callable<List<KojiBuild>>() {
+            public List<KojiBuild> call() throws XmlRpcException {
+                return listTaggedBuilds(buildParams);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of listTaggedBuilds(BuildParams, BuildHandler). The handler is called from the executor
+     * thread.
+     */
+    public ListenableFuture<Integer> listTaggedBuildsAsync(final BuildParams buildParams, final BuildHandler handler) {
+        return submit(new Callable<Integer>() {
+            public Integer call() throws XmlRpcException {
+                return listTaggedBuilds(buildParams, handler);
+            }
+        });
+    }
 
+    /**
+     * Asynchronous variant of listArchives(int).
+     */
+    public ListenableFuture<List<KojiArchive>> listArchivesAsync(final int buildId) {
+        return submit(new Callable<List<KojiArchive>>() {
+            public List<KojiArchive> call() throws XmlRpcException {
+                return listArchives(buildId);
+            }
+        });
+    }
+
+    /**
+     * Runs a call on the executor of the hub's pool. Cancelling the future before the call started skips it.
+     */
+    private <T> ListenableFuture<T> submit(Callable<T> call) {
         try {
-            objects = (Object[]) koji.execute("listTagged", params);
-        } catch (XmlRpcException e) {
-            throw e;
+            return pool().getAsyncExecutor().submit(call);
+        } catch (RejectedExecutionException e) {
+            // pool of a hub removed from configuration
+            return Futures.immediateFailedFuture(new XmlRpcException("Koji hub " + kojiInstanceURL + " is not in use", e));
         }
+    }
 
-        if (objects == null) {
-            throw new XmlRpcException("empty");
-        }
+    /**
+     * Gets id of the most recent hub event.
+     *
+     * @return Event id.
+     */
+    public int getLastEvent() throws XmlRpcException {
+        // Koji XML-RPC API
+        // getLastEvent(before=None)
+        // description: Get the last event, returns a map with id and ts
 
-        List<Map<String, String>> results = new LinkedList<Map<String, String>>();
+        Map<String, ?> event = (Map<String, ?>) execute("getLastEvent", new ArrayList<Object>());
+        int eventId = Structs.intValue(event, "id", 0);
+        KojiBuildCache.getInstance().noteEvent(kojiInstanceURL, eventId);
+        return eventId;
+    }
 
-        for (Object o : objects) {
-            Map<String, String> map = (Map<String, String>) o;
-            results.add(map);
+    /**
+     * Lists changes of builds tagged into a tag made after a given event, the tag_listing history.
+     *
+     * @param tag Koji tag
+     * @param afterEvent Only changes created or revoked after this event are returned.
+     * @return History entries with create_event, revoke_event, build_id and joined build fields.
+     */
+    public List<Map<String, ?>> queryTagHistory(String tag, int afterEvent) throws XmlRpcException {
+        // Koji XML-RPC API
+        // queryHistory(tables=None, **kwargs)
+        // description: Returns history data from various tables that support it
+
+        List<Object> tables = new ArrayList<Object>();
+        tables.add("tag_listing");
+        List<Object> params = new ArrayList<Object>();
+        params.add(tables);
+        params.add(kwargs("tag", tag, "afterEvent", afterEvent));
+
+        Map<String, ?> history = (Map<String, ?>) execute("queryHistory", params);
+
+        List<Map<String, ?>> entries = new ArrayList<Map<String, ?>>();
+        Object[] rows = history == null ? null : (Object[]) history.get("tag_listing");
+        if (rows != null) {
+            for (Object row : rows) {
+                entries.add((Map<String, ?>) row);
+            }
         }
+        return entries;
+    }
 
-        return results;
+    /**
+     * Lists names of all tags of the hub.
+     */
+    public List<String> listTagNames() throws XmlRpcException {
+        // Koji XML-RPC API
+        // listTags(build=None, package=None, perms=True, queryOpts=None)
+        // description: List tags, optionally those a build or package is tagged into
+
+        final List<String> names = new ArrayList<String>();
+        execute("listTags", new ArrayList<Object>(), KojiTag.MAPPER, new MyTypeFactory.ElementHandler() {
+            public void handleElement(Object element) {
+                String name = ((KojiTag) element).getName();
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+        });
+
+        return names;
+    }
+
+    /**
+     * Lists names of all build targets of the hub.
+     */
+    public List<String> listBuildTargetNames() throws XmlRpcException {
+        // Koji XML-RPC API
+        // getBuildTargets(info=None, event=None, buildTagID=None, destTagID=None, queryOpts=None)
+        // description: Return data on all targets, or those matching the given criteria
+
+        return listNames("getBuildTargets", new ArrayList<Object>(), "name");
+    }
+
+    /**
+     * Lists names of all packages of the hub.
+     */
+    public List<String> listPackageNames() throws XmlRpcException {
+        // Koji XML-RPC API
+        // listPackages(tagID=None, userID=None, pkgID=None, prefix=None, inherited=False, with_dups=False, event=None)
+        // description: List packages, optionally only those in a tag or owned by a user
+
+        return listNames("listPackages", new ArrayList<Object>(), "package_name");
+    }
+
+    /**
+     * Streams a list of structs, keeping only one string field of each, so large lists never exist as maps all at once.
+     */
+    private List<String> listNames(String methodName, List<Object> params, final String field) throws XmlRpcException {
+        final List<String> names = new ArrayList<String>();
+        execute(methodName, params, null, new MyTypeFactory.ElementHandler() {
+            public void handleElement(Object element) {
+                String name = Structs.internedValue((Map<String, ?>) element, field);
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+        });
+
+        return names;
+    }
+
+    /**
+     * Koji accepts keyword arguments as a trailing struct flagged with __starstar.
+     * @param keysAndValues Alternating argument names and values.
+     */
+    private static Map<String, Object> kwargs(Object... keysAndValues) {
+        Map<String, Object> kwargs = new HashMap<String, Object>();
+        kwargs.put("__starstar", true);
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            kwargs.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return kwargs;
     }
 
     /**
@@ -241,104 +850,208 @@ public class KojiClient {
     public String sayHello() {
         StringBuilder sb = new StringBuilder();
         try {
-            Object result = koji.execute("hello", new Object[]{"Hello"});
+            List<Object> params = new ArrayList<Object>();
+            params.add("Hello");
+            Object result = execute("hello", params);
             sb.append("Jenkins-Koji Plugin: Hello Koji server running at " + kojiInstanceURL);
             sb.append("\nKoji: " + result);
 
             return sb.toString();
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.warn("Unable to greet Koji hub " + kojiInstanceURL + ": " + e.getMessage());
         }
 
         return null;
     }
 
     /**
-     * Connect to remote Koji instance. Uses custom Transport factory adding a None / null support for XML-RPC.
+     * Executes a call against the hub. If the hub rejects the session as expired or invalid, logs in again and retries
+     * the call once.
      *
-     * @param kojiInstanceURL Address of the remote Koji server.
-     * @return XMLRPC client instance.
+     * @param methodName Koji XML-RPC method.
+     * @param params Method parameters.
+     * @return De-marshalled result.
      */
-    private XmlRpcClient connect(String kojiInstanceURL) throws MalformedURLException {
-        XmlRpcClient koji = new XmlRpcClient();
-        koji.setTransportFactory(new XmlRpcCommonsTransportFactory(koji));
-        XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
-        koji.setTransportFactory(new XmlRpcCommonsTransportFactory(koji));
-        koji.setTypeFactory(new MyTypeFactory(koji));
-        config.setEnabledForExtensions(true);
-        config.setEnabledForExceptions(true);
+    private Object execute(String methodName, List<Object> params) throws XmlRpcException {
+        return execute(methodName, params, null, null);
+    }
 
-        try {
-            config.setServerURL(new URL(kojiInstanceURL));
-        } catch (MalformedURLException e) {
-            throw e;
+    /**
+     * Executes a call whose response structs are mapped to model objects while being parsed. Read calls identical to
+     * one already in flight within the same session, e.g. the same anonymous getLatestBuilds from many jobs at once,
+     * share its request. Answers may depend on who asks, so calls of different sessions are never shared.
+     *
+     * @param mapper Maps the top level struct or structs of the top level array, null to keep plain maps.
+     * @param handler Receives elements of the top level array one by one, null to return them as Object[].
+     */
+    private Object execute(final String methodName, final List<Object> params, final MyTypeFactory.StructMapper mapper,
+                           MyTypeFactory.ElementHandler handler) throws XmlRpcException {
+        if (handler != null || !KojiCallPolicy.getInstance().isShareable(methodName, params)) {
+            return executeWithRelogin(methodName, params, mapper, handler);
         }
 
-        koji.setConfig(config);
-
-        return koji;
+        KojiSession current = session;
+        String key = methodName + '\n' + params + '\n' + (mapper == null ? "" : mapper.getClass().getName()) + '\n'
+                + (current == null ? "" : current.getSessionId());
+        return pool().getSingleFlight().execute(key, new Callable<Object>() {
+            public Object call() throws XmlRpcException {
+                return executeWithRelogin(methodName, params, mapper, null);
+            }
+        });
     }
 
-    public void setServerURL(String kojiInstanceURL) {
-        XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
-        config.setEnabledForExtensions(true);
-        config.setEnabledForExceptions(true);
+    private Object executeWithRelogin(String methodName, List<Object> params, MyTypeFactory.StructMapper mapper,
+                                      MyTypeFactory.ElementHandler handler) throws XmlRpcException {
+        KojiSession usedSession = session;
         try {
-            config.setServerURL(new URL(kojiInstanceURL));
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+            return invoke(methodName, params, mapper, handler);
+        } catch (XmlRpcException e) {
+            if (usedSession == null || !canLogin() || !isAuthFault(e)) {
+                throw e;
+            }
+            KojiSessionCache sessionCache = KojiSessionCache.getInstance();
+            sessionCache.invalidate(kojiInstanceURL, sessionIdentity(), usedSession);
+            sessionCache.recordRelogin();
+            newSession();
+
+            return invoke(methodName, params, mapper, handler);
         }
-        koji.setConfig(config);
     }
 
-    private void initSSL() {
-        // Create a trust manager that does not validate certificate chains
-        TrustManager[] trustAllCerts = new TrustManager[] {
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() {
-                        return null;
+    /**
+     * Executes a call under KojiCallPolicy: with method timeouts, guarded by the hub's circuit breaker and retried on
+     * transport failures if read-only. Streamed calls are not retried, their handler may already have seen elements.
+     */
+    private Object invoke(String methodName, List<Object> params, MyTypeFactory.StructMapper mapper,
+                          MyTypeFactory.ElementHandler handler) throws XmlRpcException {
+        KojiCallPolicy policy = KojiCallPolicy.getInstance();
+        KojiClientPool pool = pool();
+        KojiCircuitBreaker circuitBreaker = pool.getCircuitBreaker();
+        XmlRpcClientConfigImpl callConfig = policy.configure(config, methodName);
+        int attempts = handler == null && policy.isIdempotent(methodName, params) ? policy.getMaxAttempts() : 1;
+
+        for (int attempt = 1; ; attempt++) {
+            XmlRpcException failure;
+            boolean trial = circuitBreaker.acquire();
+            try {
+                // timing out or being interrupted while waiting for a client says nothing about the hub
+                XmlRpcClient koji = pool.borrow();
+                try {
+                    Object result = invokeOnce(koji, callConfig, methodName, params, mapper, handler);
+                    circuitBreaker.recordSuccess();
+                    return result;
+                } catch (XmlRpcException e) {
+                    if (!KojiCallPolicy.isTransportFailure(e)) {
+                        // the hub answered, it is healthy
+                        circuitBreaker.recordSuccess();
+                        throw e;
                     }
-
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                        // Trust always
-                    }
-
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                        // Trust always
+                    circuitBreaker.recordFailure();
+                    if (attempt >= attempts) {
+                        throw e;
                     }
+                    failure = e;
+                } catch (RuntimeException e) {
+                    // response could not be processed, but the hub answered
+                    circuitBreaker.recordSuccess();
+                    throw e;
+                } finally {
+                    pool.release(koji);
+                }
+            } finally {
+                if (trial) {
+                    circuitBreaker.endTrial();
                 }
-        };
+            }
 
-        // Install the all-trusting trust manager
-        SSLContext sc = null;
+            long backoff = policy.backoffMillis(attempt);
+            logger.info("Koji call " + methodName + " to " + kojiInstanceURL + " failed (" + failure.getMessage()
+                    + "), retrying in " + backoff + " ms");
+            circuitBreaker.recordRetry();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new XmlRpcException("Interrupted while retrying " + methodName, ie);
+            }
+        }
+    }
+
+    /**
+     * Executes a single call on a pooled XML-RPC client, using this instance's session.
+     */
+    private Object invokeOnce(XmlRpcClient koji, XmlRpcClientConfigImpl callConfig, String methodName,
+                              List<Object> params, MyTypeFactory.StructMapper mapper,
+                              MyTypeFactory.ElementHandler handler) throws XmlRpcException {
+        KojiMetrics.MethodMetrics metrics = KojiMetrics.getInstance().forMethod(methodName);
+        long started = metrics.started();
+        boolean failed = true;
         try {
-            sc = SSLContext.getInstance("SSL");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-        // Create empty HostnameVerifier
-        HostnameVerifier hv = new HostnameVerifier() {
-            public boolean verify(String arg0, SSLSession arg1) {
-                return true;
+            if (mapper != null || handler != null) {
+                MyTypeFactory.expectResponse(mapper, handler);
             }
-        };
+            Object result = koji.execute(callConfig, methodName, params);
+            failed = false;
+            return result;
+        } finally {
+            metrics.completed(started, failed);
+            MyTypeFactory.clearResponse();
+        }
+    }
 
+    private boolean canLogin() {
+        return password != null || sslCertificatePath != null || kerberos != null;
+    }
+
+    /**
+     * Koji reports invalid or expired sessions as AuthError (1002) or AuthExpired (1007) faults.
+     */
+    private static boolean isAuthFault(XmlRpcException e) {
+        return e.code == FAULT_AUTH_ERROR || e.code == FAULT_AUTH_EXPIRED;
+    }
 
+    /**
+     * Creates client configuration for remote Koji instance with XML-RPC extensions enabled, needed for None / null
+     * support.
+     *
+     * @param kojiInstanceURL Address of the remote Koji server.
+     * @return XMLRPC client configuration.
+     */
+    private static XmlRpcClientConfigImpl createConfig(String kojiInstanceURL) throws MalformedURLException {
+        XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+        config.setEnabledForExtensions(true);
+        config.setEnabledForExceptions(true);
+        config.setServerURL(new URL(kojiInstanceURL));
+
+        return config;
+    }
+
+    /**
+     * Points this client to a different URL, usually the hub URL with embedded session. Only affects this instance,
+     * other settings of the configuration are kept.
+     */
+    public void setServerURL(String kojiInstanceURL) {
         try {
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
+            XmlRpcClientConfigImpl newConfig = config.cloneMe();
+            newConfig.setServerURL(new URL(kojiInstanceURL));
+            this.config = newConfig;
+        } catch (MalformedURLException e) {
+            logger.warn("Invalid Koji hub URL " + kojiInstanceURL + ": " + e.getMessage());
         }
-        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-        HttpsURLConnection.setDefaultHostnameVerifier(hv);
-        SSLContext.setDefault(sc);
     }
 
+    /**
+     * Enables logging of raw XML requests and responses. Applies to all clients of the same hub.
+     */
     public void setDebug(boolean debug) {
-        if (debug)
-            koji.setTransportFactory(new MyXmlRpcCommonsTransportFactory(koji));
-        else
-            koji.setTransportFactory(new XmlRpcCommonsTransportFactory(koji));
+        pool().setDebug(debug);
+    }
+
+    /**
+     * Callback receiving builds from streamed queries.
+     */
+    public interface BuildHandler {
+        void handleBuild(KojiBuild build);
     }
 
     /**
@@ -351,8 +1064,12 @@ public class KojiClient {
         private final String pkg;
         private final String owner;
         private final String type;
+        /**
+         * Hub event the query is answered as of, null for current state.
+         */
+        private final Integer event;
 
-        BuildParams(String id, String tag, boolean latest, String pkg, String owner, String type) {
+        BuildParams(String id, String tag, boolean latest, String pkg, String owner, String type, Integer event) {
             this.id = id;
 
             this.tag = tag;
@@ -360,6 +1077,7 @@ public class KojiClient {
             this.pkg = pkg;
             this.owner = owner;
             this.type = type;
+            this.event = event;
         }
 
         public String getId() {
@@ -385,6 +1103,10 @@ public class KojiClient {
         public String getType() {
             return type;
         }
+
+        public Integer getEvent() {
+            return event;
+        }
     }
 
     /**
@@ -397,6 +1119,7 @@ public class KojiClient {
         private String pkg = null;
         private String owner = null;
         private String type = null;
+        private Integer event = null;
 
         BuildParamsBuilder setId(String id) {
             this.id = id;
@@ -428,8 +1151,13 @@ public class KojiClient {
             return this;
         }
 
+        BuildParamsBuilder setEvent(Integer event) {
+            this.event = event;
+            return this;
+        }
+
         BuildParams build() {
-            return new BuildParams(id, tag, latest, pkg, owner, type);
+            return new BuildParams(id, tag, latest, pkg, owner, type, event);
         }
     }
 }
@@ -0,0 +1,456 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcCommonsTransportFactory;
+
+import javax.net.ssl.SSLContext;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of XML-RPC clients for a single Koji hub. Pools are kept in a registry keyed by hub URL, so all
+ * KojiClients talking to the same hub share them. Clients logged in with a client certificate use a separate pool per
+ * certificate, as the certificate is a property of the HTTPS connections.
+ *
+ * All pooled clients share one multi-threaded HTTP connection manager, so concurrent builds each get their own
+ * XML-RPC client while still reusing keep-alive TCP/TLS connections to the hub. Connections of a certificate's pool
+ * are made with its cached SSLContext, so they resume earlier TLS sessions.
+ *
+ * Borrowing a client is what protects the hub from bursts: callers first pass the hub's KojiRateLimiter and then wait
+ * in FIFO order for one of maxClients in-flight slots. Time spent waiting is recorded as queue wait metrics.
+ *
+ * Asynchronous calls of KojiClient run on the pool's executor, which has at most maxClients threads. Calls beyond that
+ * are only queued, so any number of them can be outstanding without holding a thread each.
+ */
+public class KojiClientPool {
+
+    /**
+     * Default maximum of XML-RPC clients (and HTTP connections) used concurrently against a single hub.
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 20;
+    /**
+     * How long a caller waits for a free client before giving up.
+     */
+    private static final long BORROW_TIMEOUT_SECONDS = 300;
+
+    /**
+     * Registry of pools, one per Koji hub URL and client certificate.
+     */
+    private static final ConcurrentMap<String, KojiClientPool> pools = new ConcurrentHashMap<String, KojiClientPool>();
+
+    /**
+     * Limits applied to every hub, set from global configuration.
+     */
+    private static volatile int defaultMaxClients = DEFAULT_MAX_CLIENTS;
+    private static volatile double defaultRateLimit;
+    private static volatile boolean defaultDebug;
+
+    /**
+     * Koji hub URL this pool is connected to.
+     */
+    private final String kojiInstanceURL;
+    /**
+     * Client certificate all connections of this pool are made with, null for anonymous and other logins.
+     */
+    private final String certificatePath;
+    /**
+     * Connection manager shared by all pooled clients, keeps HTTP connections alive between calls.
+     */
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient httpClient;
+    /**
+     * Sockets of HTTPS connections, null for JVM defaults.
+     */
+    private KojiSslSocketFactory sslSocketFactory;
+    /**
+     * Clients not currently lent to any caller.
+     */
+    private final BlockingQueue<XmlRpcClient> idleClients = new LinkedBlockingQueue<XmlRpcClient>();
+    /**
+     * Bounds the number of clients lent at the same time.
+     */
+    private final AdjustableSemaphore permits;
+    private int maxClients;
+    /**
+     * Health of the hub as seen by all its clients.
+     */
+    private final KojiCircuitBreaker circuitBreaker;
+    private final KojiRateLimiter rateLimiter = new KojiRateLimiter();
+    private final KojiSingleFlight singleFlight = new KojiSingleFlight();
+    private final ThreadPoolExecutor asyncThreads;
+    private final ListeningExecutorService asyncExecutor;
+
+    private final AtomicInteger waitingCallers = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private volatile boolean debug;
+
+    private KojiClientPool(String kojiInstanceURL, String certificatePath, int maxClients, double rateLimit) {
+        this.kojiInstanceURL = kojiInstanceURL;
+        this.certificatePath = certificatePath;
+        this.maxClients = maxClients;
+        this.permits = new AdjustableSemaphore(maxClients);
+        rateLimiter.setRate(rateLimit);
+        this.debug = defaultDebug;
+        this.circuitBreaker = new KojiCircuitBreaker(kojiInstanceURL);
+
+        asyncThreads = new ThreadPoolExecutor(maxClients, maxClients, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Koji calls to " + KojiClientPool.this.kojiInstanceURL + " #"
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        asyncThreads.allowCoreThreadTimeOut(true);
+        asyncExecutor = MoreExecutors.listeningDecorator(asyncThreads);
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxClients);
+        params.setMaxTotalConnections(maxClients);
+        params.setStaleCheckingEnabled(true);
+        httpClient = new HttpClient(connectionManager);
+    }
+
+    /**
+     * Get the pool for a given Koji hub, creating it on first use.
+     *
+     * @param kojiInstanceURL URL of remote Koji instance.
+     */
+    public static KojiClientPool forHub(String kojiInstanceURL) {
+        return forHub(kojiInstanceURL, null);
+    }
+
+    /**
+     * Get the pool for a given Koji hub and client certificate, creating it on first use.
+     *
+     * @param kojiInstanceURL URL of remote Koji instance.
+     * @param certificatePath Client certificate, null for the pool of connections without one.
+     */
+    public static KojiClientPool forHub(String kojiInstanceURL, String certificatePath) {
+        String key = certificatePath == null ? kojiInstanceURL : kojiInstanceURL + '\n' + certificatePath;
+        KojiClientPool pool = pools.get(key);
+        if (pool == null) {
+            KojiClientPool created = new KojiClientPool(kojiInstanceURL, certificatePath, defaultMaxClients,
+                    defaultRateLimit);
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.shutdown();
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * Drops the pools for a hub that is no longer configured, including those of client certificates, and closes their
+     * connections. KojiClients look their pool up for every call, so clients still in use get a new pool on their next
+     * call.
+     *
+     * @param kojiInstanceURL URL of remote Koji instance.
+     */
+    public static void remove(String kojiInstanceURL) {
+        for (Iterator<KojiClientPool> it = pools.values().iterator(); it.hasNext(); ) {
+            KojiClientPool pool = it.next();
+            if (pool.kojiInstanceURL.equals(kojiInstanceURL)) {
+                it.remove();
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Sets limits of all hubs, existing pools are adjusted immediately.
+     * @param maxClients Maximum of calls in flight per hub.
+     * @param rateLimit Calls per second per hub, 0 for no limit.
+     */
+    public static void setLimits(int maxClients, double rateLimit) {
+        defaultMaxClients = maxClients > 0 ? maxClients : DEFAULT_MAX_CLIENTS;
+        defaultRateLimit = rateLimit;
+        for (KojiClientPool pool : pools.values()) {
+            pool.setMaxClients(defaultMaxClients);
+            pool.rateLimiter.setRate(rateLimit);
+        }
+    }
+
+    /**
+     * @return Pools of all hubs in use.
+     */
+    public static Collection<KojiClientPool> getPools() {
+        return Collections.unmodifiableCollection(pools.values());
+    }
+
+    /**
+     * Switches capturing of raw XML into KojiWireLog for all hubs.
+     */
+    public static void setDebugAll(boolean debug) {
+        defaultDebug = debug;
+        for (KojiClientPool pool : pools.values()) {
+            pool.setDebug(debug);
+        }
+    }
+
+    public String getKojiInstanceURL() {
+        return kojiInstanceURL;
+    }
+
+    /**
+     * @return Client certificate of this pool's connections, null if none.
+     */
+    public String getCertificatePath() {
+        return certificatePath;
+    }
+
+    public synchronized int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * Changes the in-flight cap. Lowering it takes effect as calls in flight complete.
+     */
+    public synchronized void setMaxClients(int maxClients) {
+        int delta = maxClients - this.maxClients;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        if (delta > 0) {
+            asyncThreads.setMaximumPoolSize(maxClients);
+            asyncThreads.setCorePoolSize(maxClients);
+        } else if (delta < 0) {
+            asyncThreads.setCorePoolSize(maxClients);
+            asyncThreads.setMaximumPoolSize(maxClients);
+        }
+        this.maxClients = maxClients;
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxClients);
+        connectionManager.getParams().setMaxTotalConnections(maxClients);
+    }
+
+    /**
+     * Makes all HTTPS connections of this certificate's pool with the given TLS context, the certificate's current
+     * SSLContext. Connections made with a previous context, e.g. before the certificate file was replaced, are closed
+     * once idle.
+     */
+    synchronized void setSslContext(SSLContext context) throws XmlRpcException {
+        if (certificatePath == null) {
+            throw new IllegalStateException("Pool of " + kojiInstanceURL + " is not the pool of a client certificate");
+        }
+        if (sslSocketFactory != null && sslSocketFactory.getContext() == context) {
+            return;
+        }
+        URL url;
+        try {
+            url = new URL(kojiInstanceURL);
+        } catch (MalformedURLException e) {
+            throw new XmlRpcException(e.getMessage(), e);
+        }
+        if (!"https".equals(url.getProtocol())) {
+            throw new XmlRpcException("Koji hub URL " + kojiInstanceURL + " must be https to use a client certificate");
+        }
+
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        sslSocketFactory = new KojiSslSocketFactory(context);
+        httpClient.getHostConfiguration().setHost(url.getHost(), port, new Protocol("https", sslSocketFactory, port));
+        connectionManager.closeIdleConnections(0);
+    }
+
+    public KojiRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public KojiSingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public KojiCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Executor of asynchronous calls to this hub.
+     */
+    ListeningExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Number of asynchronous calls waiting for a thread.
+     */
+    public int getQueuedAsyncCalls() {
+        return asyncThreads.getQueue().size();
+    }
+
+    /**
+     * Number of clients currently lent to callers.
+     */
+    public int getActiveClients() {
+        return getMaxClients() - permits.availablePermits();
+    }
+
+    /**
+     * Number of callers currently waiting for the rate limiter or a free client.
+     */
+    public int getWaitingCallers() {
+        return waitingCallers.get();
+    }
+
+    /**
+     * Number of clients lent so far.
+     */
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    /**
+     * Average time callers waited for a client, in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long count = borrowed.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Longest time a caller waited for a client, in milliseconds.
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Lends a client from the pool. Every borrowed client has to be given back via release().
+     *
+     * @return XML-RPC client exclusively owned by the caller until released.
+     * @throws XmlRpcException if no client becomes available in time.
+     */
+    XmlRpcClient borrow() throws XmlRpcException {
+        long started = System.nanoTime();
+        waitingCallers.incrementAndGet();
+        try {
+            rateLimiter.acquire();
+            long remaining = TimeUnit.SECONDS.toNanos(BORROW_TIMEOUT_SECONDS) - (System.nanoTime() - started);
+            if (!permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                throw new XmlRpcException("Timed out waiting for a free connection to " + kojiInstanceURL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XmlRpcException("Interrupted while waiting for a free connection to " + kojiInstanceURL, e);
+        } finally {
+            waitingCallers.decrementAndGet();
+        }
+        recordWait(System.nanoTime() - started);
+
+        XmlRpcClient client = idleClients.poll();
+        // released while debug was being switched
+        while (client != null && !hasCurrentTransport(client)) {
+            client = idleClients.poll();
+        }
+        if (client == null) {
+            client = newClient();
+        }
+
+        return client;
+    }
+
+    /**
+     * Returns a client to the pool. Clients created before debug was switched are dropped.
+     *
+     * @param client Client obtained from borrow().
+     */
+    void release(XmlRpcClient client) {
+        if (hasCurrentTransport(client)) {
+            idleClients.offer(client);
+        }
+        permits.release();
+    }
+
+    /**
+     * Switches logging of raw XML for all clients of this hub. Idle clients are dropped now and clients lent to
+     * callers once released, so that new ones pick up the right transport.
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+        idleClients.clear();
+    }
+
+    private boolean hasCurrentTransport(XmlRpcClient client) {
+        return (client.getTransportFactory() instanceof MyXmlRpcCommonsTransportFactory) == debug;
+    }
+
+    /**
+     * Creates a new XML-RPC client sharing the pool's HTTP connections. Uses custom type factory adding a None / null
+     * support for XML-RPC.
+     */
+    private XmlRpcClient newClient() {
+        XmlRpcClient client = new XmlRpcClient();
+        XmlRpcCommonsTransportFactory transportFactory;
+        if (debug)
+            transportFactory = new MyXmlRpcCommonsTransportFactory(client);
+        else
+            transportFactory = new KojiTransportFactory(client);
+        transportFactory.setHttpClient(httpClient);
+        client.setTransportFactory(transportFactory);
+        client.setTypeFactory(new MyTypeFactory(client));
+
+        return client;
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowed.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max = maxWaitNanos.get();
+        while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private void shutdown() {
+        asyncThreads.shutdown();
+        idleClients.clear();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Fair semaphore whose permits can be taken away when the in-flight cap is lowered.
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.ietf.jgss.GSSContext;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSManager;
+import org.ietf.jgss.GSSName;
+import org.ietf.jgss.Oid;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+import javax.xml.bind.DatatypeConverter;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kerberos credentials of the Jenkins controller, producing SPNEGO tokens for Koji's GSSAPI login.
+ *
+ * Credentials come from a keytab if one is configured, otherwise from the ticket cache of the Jenkins user (kinit).
+ * The JAAS login is done once and kept until the ticket granting ticket is about to expire, so a login to the hub
+ * costs one service ticket request at most, usually none.
+ */
+public class KojiKerberos {
+
+    /**
+     * Tickets expiring sooner than this are renewed by logging in again.
+     */
+    private static final long EXPIRY_MARGIN_MILLIS = 5 * 60 * 1000;
+    private static final String SPNEGO_OID = "1.3.6.1.5.5.2";
+
+    /**
+     * Shared credentials, by principal and keytab.
+     */
+    private static final Map<String, KojiKerberos> instances = new HashMap<String, KojiKerberos>();
+
+    private final String principal;
+    private final String keytab;
+    private Subject subject;
+
+    private KojiKerberos(String principal, String keytab) {
+        this.principal = principal;
+        this.keytab = keytab;
+    }
+
+    /**
+     * @param principal Kerberos principal, null for the default principal of the ticket cache.
+     * @param keytab Keytab of the principal, null to use the ticket cache.
+     */
+    public static synchronized KojiKerberos get(String principal, String keytab) {
+        String key = principal + '\n' + keytab;
+        KojiKerberos kerberos = instances.get(key);
+        if (kerberos == null) {
+            kerberos = new KojiKerberos(principal, keytab);
+            instances.put(key, kerberos);
+        }
+
+        return kerberos;
+    }
+
+    /**
+     * Forgets all credentials, e.g. after Kerberos settings change in global configuration.
+     */
+    public static synchronized void clear() {
+        instances.clear();
+    }
+
+    /**
+     * Name used to key sessions of these credentials.
+     */
+    public String getPrincipal() {
+        return principal == null ? "default principal" : principal;
+    }
+
+    /**
+     * Creates the value of an Authorization header for a request to the hub. Every token is fresh, a retried request
+     * needs a new one.
+     * @param host Host name of the hub, its service principal is HTTP/host.
+     */
+    public String negotiate(final String host) throws XmlRpcException {
+        try {
+            byte[] token = Subject.doAs(getSubject(), new PrivilegedExceptionAction<byte[]>() {
+                public byte[] run() throws GSSException {
+                    GSSManager manager = GSSManager.getInstance();
+                    Oid spnego = new Oid(SPNEGO_OID);
+                    GSSName service = manager.createName("HTTP@" + host, GSSName.NT_HOSTBASED_SERVICE);
+                    GSSContext context = manager.createContext(service.canonicalize(spnego), spnego, null,
+                            GSSContext.DEFAULT_LIFETIME);
+                    try {
+                        context.requestMutualAuth(true);
+                        context.requestCredDeleg(false);
+                        return context.initSecContext(new byte[0], 0, 0);
+                    } finally {
+                        context.dispose();
+                    }
+                }
+            });
+
+            return "Negotiate " + DatatypeConverter.printBase64Binary(token);
+        } catch (PrivilegedActionException e) {
+            throw new XmlRpcException("Unable to get Kerberos ticket for Koji hub " + host + ": "
+                    + e.getException().getMessage(), e.getException());
+        }
+    }
+
+    private synchronized Subject getSubject() throws XmlRpcException {
+        if (subject != null && !isExpiring(subject)) {
+            return subject;
+        }
+
+        try {
+            LoginContext loginContext = new LoginContext("koji", new Subject(), null, new KerberosConfiguration());
+            loginContext.login();
+            subject = loginContext.getSubject();
+        } catch (LoginException e) {
+            throw new XmlRpcException("Kerberos login of " + getPrincipal() + " failed: " + e.getMessage(), e);
+        }
+
+        return subject;
+    }
+
+    private static boolean isExpiring(Subject subject) {
+        for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+            if (ticket.getServer().getName().startsWith("krbtgt/")) {
+                return ticket.getEndTime().getTime() - System.currentTimeMillis() < EXPIRY_MARGIN_MILLIS;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * JAAS configuration of the Kerberos login module, so nothing has to be set up in the JVM.
+     */
+    private class KerberosConfiguration extends Configuration {
+        @Override
+        public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+            Map<String, String> options = new HashMap<String, String>();
+            options.put("doNotPrompt", "true");
+            options.put("refreshKrb5Config", "true");
+            if (principal != null) {
+                options.put("principal", principal);
+            }
+            if (keytab != null) {
+                options.put("useKeyTab", "true");
+                options.put("keyTab", keytab);
+                options.put("storeKey", "true");
+            } else {
+                options.put("useTicketCache", "true");
+                options.put("renewTGT", "true");
+            }
+
+            return new AppConfigurationEntry[] {
+                    new AppConfigurationEntry("com.sun.security.auth.module.Krb5LoginModule",
+                            AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options)
+            };
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * Looks up latest builds of many packages in many tags at once.
+ *
+ * Package names are looked up in multiCall batches of batchSize, patterns (with * and ?) against the latest builds of
+ * the whole tag. All batches of all tags are sent as asynchronous calls at the same time, the hub's KojiClientPool runs
+ * at most its in-flight cap of them in parallel. The lookup thus takes about as long as the slowest call instead of the
+ * sum of all of them, while results still come in the order of the tags and packages asked for.
+ */
+public class KojiLatestBuilds {
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final KojiClient koji;
+    private final int batchSize;
+
+    public KojiLatestBuilds(KojiClient koji) {
+        this(koji, DEFAULT_BATCH_SIZE);
+    }
+
+    public KojiLatestBuilds(KojiClient koji, int batchSize) {
+        this.koji = koji;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return True if a package name is a pattern rather than a plain name.
+     */
+    public static boolean isPattern(String pkg) {
+        return pkg.indexOf('*') >= 0 || pkg.indexOf('?') >= 0;
+    }
+
+    /**
+     * Looks up latest builds.
+     * @param tags Koji tags
+     * @param pkgs Package names or patterns.
+     * @return Results by tag, then by package as listed. Packages matched by a pattern follow in order of their names.
+     * Packages without a build in a tag, or patterns matching none, have a result without build.
+     */
+    public List<Result> resolve(List<String> tags, List<String> pkgs) throws XmlRpcException, InterruptedException {
+        List<String> names = new ArrayList<String>();
+        boolean patterns = false;
+        for (String pkg : pkgs) {
+            if (isPattern(pkg)) {
+                patterns = true;
+            } else if (!names.contains(pkg)) {
+                names.add(pkg);
+            }
+        }
+
+        // send everything before waiting for anything
+        Map<String, List<ListenableFuture<Map<String, KojiBuild>>>> batches =
+                new HashMap<String, List<ListenableFuture<Map<String, KojiBuild>>>>();
+        Map<String, ListenableFuture<List<KojiBuild>>> tagLatest = new HashMap<String, ListenableFuture<List<KojiBuild>>>();
+        List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>();
+        for (String tag : tags) {
+            List<ListenableFuture<Map<String, KojiBuild>>> tagBatches = new ArrayList<ListenableFuture<Map<String, KojiBuild>>>();
+            for (int from = 0; from < names.size(); from += batchSize) {
+                List<String> batch = new ArrayList<String>(names.subList(from, Math.min(from + batchSize, names.size())));
+                tagBatches.add(koji.getLatestBuildsAsync(tag, batch));
+            }
+            batches.put(tag, tagBatches);
+            futures.addAll(tagBatches);
+            if (patterns) {
+                ListenableFuture<List<KojiBuild>> latest = koji.listLatestBuildsAsync(tag);
+                tagLatest.put(tag, latest);
+                futures.add(latest);
+            }
+        }
+
+        try {
+            List<Result> results = new ArrayList<Result>();
+            for (String tag : tags) {
+                Map<String, KojiBuild> byName = new HashMap<String, KojiBuild>();
+                for (ListenableFuture<Map<String, KojiBuild>> batch : batches.get(tag)) {
+                    byName.putAll(get(batch));
+                }
+                List<KojiBuild> latest = patterns ? sortedByName(get(tagLatest.get(tag))) : null;
+
+                for (String pkg : pkgs) {
+                    if (!isPattern(pkg)) {
+                        results.add(new Result(tag, pkg, byName.get(pkg)));
+                        continue;
+                    }
+                    Pattern pattern = toRegex(pkg);
+                    boolean matched = false;
+                    for (KojiBuild build : latest) {
+                        if (pattern.matcher(build.getName()).matches()) {
+                            results.add(new Result(tag, pkg, build));
+                            matched = true;
+                        }
+                    }
+                    if (!matched) {
+                        results.add(new Result(tag, pkg, null));
+                    }
+                }
+            }
+            return results;
+        } finally {
+            // after a failure, nothing else is needed
+            for (ListenableFuture<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static <T> T get(ListenableFuture<T> future) throws XmlRpcException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XmlRpcException) {
+                throw (XmlRpcException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new XmlRpcException(cause.getMessage(), cause);
+        }
+    }
+
+    private static List<KojiBuild> sortedByName(List<KojiBuild> builds) {
+        List<KojiBuild> sorted = new ArrayList<KojiBuild>(builds);
+        Collections.sort(sorted, new Comparator<KojiBuild>() {
+            public int compare(KojiBuild b1, KojiBuild b2) {
+                return b1.getName().compareTo(b2.getName());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Translates a package pattern with * and ? wildcards to a regular expression.
+     */
+    static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Latest build of a package in a tag.
+     */
+    public static class Result {
+        private final String tag;
+        private final String pkg;
+        private final KojiBuild build;
+
+        Result(String tag, String pkg, KojiBuild build) {
+            this.tag = tag;
+            this.pkg = pkg;
+            this.build = build;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * @return Package name or pattern as asked for.
+         */
+        public String getPkg() {
+            return pkg;
+        }
+
+        /**
+         * @return Latest build, null if there is none.
+         */
+        public KojiBuild getBuild() {
+            return build;
+        }
+    }
+}
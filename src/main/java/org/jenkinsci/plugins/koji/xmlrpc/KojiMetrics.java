@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Controller-wide metrics of Koji calls: per method call and error counts, calls in flight, latency histogram and
+ * bytes sent and received.
+ *
+ * Recording costs two System.nanoTime() calls and a few atomic increments per call, no locks and no allocation once a
+ * method was seen. Koji CLI invocations are recorded too, as "cli:" + CLI command.
+ */
+public class KojiMetrics {
+
+    /**
+     * Upper bounds of latency histogram buckets in milliseconds, the last bucket holds everything slower.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000,
+            60000, 300000};
+
+    /**
+     * Singleton.
+     */
+    private static final KojiMetrics instance = new KojiMetrics();
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+    public static KojiMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets metrics of a method, created on first use.
+     * @param name Koji XML-RPC method or "cli:" + CLI command.
+     */
+    public MethodMetrics forMethod(String name) {
+        MethodMetrics metrics = methods.get(name);
+        if (metrics == null) {
+            MethodMetrics created = new MethodMetrics(name);
+            metrics = methods.putIfAbsent(name, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return Metrics of all methods called so far, by name.
+     */
+    public List<MethodMetrics> getMethods() {
+        List<MethodMetrics> result = new ArrayList<MethodMetrics>(methods.values());
+        Collections.sort(result, new Comparator<MethodMetrics>() {
+            public int compare(MethodMetrics m1, MethodMetrics m2) {
+                return m1.name.compareTo(m2.name);
+            }
+        });
+        return result;
+    }
+
+    public static long[] getBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    public void reset() {
+        methods.clear();
+    }
+
+    /**
+     * Metrics of a single method.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class MethodMetrics {
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+        private final AtomicLong decodedResponseBytes = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+        MethodMetrics(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Marks a call as started.
+         * @return Start time to be passed to completed().
+         */
+        public long started() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * Marks a call started by started() as completed.
+         * @param failed True if the call ended with an error.
+         */
+        public void completed(long startedNanos, boolean failed) {
+            long nanos = System.nanoTime() - startedNanos;
+            inFlight.decrementAndGet();
+            calls.incrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            histogram.incrementAndGet(bucket(nanos / 1000000));
+        }
+
+        /**
+         * @param sent Request bytes on the wire.
+         * @param received Response bytes on the wire.
+         * @param decoded Response bytes after decompression.
+         */
+        void addBytes(long sent, long received, long decoded) {
+            requestBytes.addAndGet(sent);
+            responseBytes.addAndGet(received);
+            decodedResponseBytes.addAndGet(decoded);
+        }
+
+        private static int bucket(long millis) {
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                if (millis <= BUCKET_BOUNDS_MILLIS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_BOUNDS_MILLIS.length;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public long getCalls() {
+            return calls.get();
+        }
+
+        @Exported
+        public long getErrors() {
+            return errors.get();
+        }
+
+        @Exported
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        @Exported
+        public double getAverageMillis() {
+            long count = calls.get();
+            return count == 0 ? 0 : totalNanos.get() / 1e6 / count;
+        }
+
+        @Exported
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * Latency percentile estimated from the histogram, as upper bound of the bucket it falls into.
+         * @param percentile Between 0 and 100.
+         */
+        public double getPercentileMillis(double percentile) {
+            long count = 0;
+            long[] buckets = getHistogram();
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            long threshold = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[i], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        @Exported
+        public double getMedianMillis() {
+            return getPercentileMillis(50);
+        }
+
+        @Exported
+        public double getP99Millis() {
+            return getPercentileMillis(99);
+        }
+
+        @Exported
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        /**
+         * Response bytes as transferred, compressed if the hub compressed them.
+         */
+        @Exported
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        /**
+         * Response bytes after decompression, i.e. size of the XML parsed.
+         */
+        @Exported
+        public long getDecodedResponseBytes() {
+            return decodedResponseBytes.get();
+        }
+
+        /**
+         * How many times smaller responses were on the wire than parsed, 1 if not compressed.
+         */
+        @Exported
+        public double getCompressionRatio() {
+            long received = responseBytes.get();
+            return received == 0 ? 1 : (double) decodedResponseBytes.get() / received;
+        }
+
+        /**
+         * Call counts per latency bucket, see BUCKET_BOUNDS_MILLIS.
+         */
+        @Exported
+        public long[] getHistogram() {
+            long[] buckets = new long[histogram.length()];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return buckets;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch of Koji calls sent to the hub as a single multiCall request. Use KojiClient.multiCall() for initialization.
+ *
+ * Calls are queued by add(), which returns a Result handle. flush() sends the queue in batches of at most maxBatchSize
+ * calls, each batch costing one round-trip. Every call succeeds or fails on its own, a fault of one call is only
+ * reported by its Result.
+ */
+public class KojiMultiCall {
+
+    /**
+     * Default maximum of calls sent in one multiCall request.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final KojiClient koji;
+    private final int maxBatchSize;
+    /**
+     * Calls waiting for the next flush.
+     */
+    private final List<Call> queue = new ArrayList<Call>();
+
+    KojiMultiCall(KojiClient koji, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.koji = koji;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Queues a call.
+     * @param methodName Koji XML-RPC method.
+     * @param params Method parameters.
+     * @return Handle holding the result once the batch is flushed.
+     */
+    public Result add(String methodName, List<Object> params) {
+        Call call = new Call(methodName, params);
+        queue.add(call);
+        return call.result;
+    }
+
+    /**
+     * Number of calls queued and not yet flushed.
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Sends all queued calls to the hub. On transport failure the calls of the failed batch and all batches after it
+     * stay queued.
+     * @throws XmlRpcException if the multiCall request itself fails.
+     */
+    public void flush() throws XmlRpcException {
+        while (!queue.isEmpty()) {
+            List<Call> batch = queue.subList(0, Math.min(maxBatchSize, queue.size()));
+
+            List<Object> calls = new ArrayList<Object>(batch.size());
+            for (Call call : batch) {
+                calls.add(call.toStruct());
+            }
+
+            Object[] results = koji.executeMultiCall(calls);
+            if (results == null || results.length != batch.size()) {
+                throw new XmlRpcException("Koji multiCall returned " + (results == null ? 0 : results.length)
+                        + " results for " + batch.size() + " calls");
+            }
+
+            for (int i = 0; i < results.length; i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Single queued call.
+     */
+    private static class Call {
+        private final String methodName;
+        private final List<Object> params;
+        private final Result result = new Result();
+
+        Call(String methodName, List<Object> params) {
+            this.methodName = methodName;
+            this.params = params;
+        }
+
+        /**
+         * Koji expects every call in multiCall as a struct with methodName and params.
+         */
+        Map<String, Object> toStruct() {
+            Map<String, Object> struct = new HashMap<String, Object>();
+            struct.put("methodName", methodName);
+            struct.put("params", params);
+            return struct;
+        }
+    }
+
+    /**
+     * Result of a single call within a multiCall.
+     */
+    public static class Result {
+        private boolean done;
+        private Object value;
+        private XmlRpcException fault;
+
+        /**
+         * Koji returns every successful result wrapped in a single element array, faults as a struct with faultCode and
+         * faultString.
+         */
+        void complete(Object response) {
+            done = true;
+            if (response instanceof Object[] && ((Object[]) response).length == 1) {
+                value = ((Object[]) response)[0];
+            } else if (response instanceof Map) {
+                Map<?, ?> struct = (Map<?, ?>) response;
+                Object faultCode = struct.get("faultCode");
+                int code = faultCode instanceof Integer ? (Integer) faultCode : 0;
+                fault = new XmlRpcException(code, String.valueOf(struct.get("faultString")));
+            } else {
+                fault = new XmlRpcException("Unexpected multiCall result: " + response);
+            }
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public boolean isFault() {
+            return fault != null;
+        }
+
+        /**
+         * Gets the result of the call.
+         * @return De-marshalled result.
+         * @throws XmlRpcException if the call failed on the hub.
+         * @throws IllegalStateException if the batch was not flushed yet.
+         */
+        public Object get() throws XmlRpcException {
+            if (!done) {
+                throw new IllegalStateException("Result not available before flush");
+            }
+            if (fault != null) {
+                throw fault;
+            }
+            return value;
+        }
+    }
+}
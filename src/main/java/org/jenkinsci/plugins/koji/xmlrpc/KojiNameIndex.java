@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory index of tag, build target and package names of a hub, behind autocompletion and validation of job
+ * configuration.
+ *
+ * Names are kept in sorted arrays: a prefix lookup is a binary search followed by a scan of the matches, which takes
+ * microseconds even for hundreds of thousands of packages and needs no memory beyond the names themselves. A refresh
+ * builds new arrays and swaps them in at once, so lookups never wait for the hub and never see a half-loaded index.
+ */
+public class KojiNameIndex {
+
+    /**
+     * Indexes keyed by hub URL.
+     */
+    private static final ConcurrentMap<String, KojiNameIndex> indexes = new ConcurrentHashMap<String, KojiNameIndex>();
+
+    private final String kojiInstanceURL;
+    private volatile Names names = new Names(new String[0], new String[0], new String[0], 0, 0);
+
+    private KojiNameIndex(String kojiInstanceURL) {
+        this.kojiInstanceURL = kojiInstanceURL;
+    }
+
+    /**
+     * Gets the shared index of a hub, empty until refreshed.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     */
+    public static KojiNameIndex forHub(String kojiInstanceURL) {
+        KojiNameIndex index = indexes.get(kojiInstanceURL);
+        if (index == null) {
+            KojiNameIndex newIndex = new KojiNameIndex(kojiInstanceURL);
+            index = indexes.putIfAbsent(kojiInstanceURL, newIndex);
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Drops the index of a hub that is no longer configured.
+     */
+    public static void remove(String kojiInstanceURL) {
+        indexes.remove(kojiInstanceURL);
+    }
+
+    /**
+     * Reloads all names from the hub. The previous names stay in use until all lists are loaded.
+     * @param koji Client of the hub the index belongs to.
+     * @param event Hub event the names are loaded as of, see KojiClient.getLastEvent().
+     */
+    public synchronized void refresh(KojiClient koji, int event) throws XmlRpcException {
+        String[] tags = sorted(koji.listTagNames());
+        String[] targets = sorted(koji.listBuildTargetNames());
+        String[] packages = sorted(koji.listPackageNames());
+        names = new Names(tags, targets, packages, event, System.currentTimeMillis());
+    }
+
+    public String getKojiInstanceURL() {
+        return kojiInstanceURL;
+    }
+
+    /**
+     * @return True once names were loaded from the hub.
+     */
+    public boolean isLoaded() {
+        return names.loaded > 0;
+    }
+
+    /**
+     * Time of the last refresh, 0 if never loaded.
+     */
+    public long getLoaded() {
+        return names.loaded;
+    }
+
+    /**
+     * Hub event of the last refresh, 0 if never loaded.
+     */
+    public int getEvent() {
+        return names.event;
+    }
+
+    public int getTagCount() {
+        return names.tags.length;
+    }
+
+    public int getTargetCount() {
+        return names.targets.length;
+    }
+
+    public int getPackageCount() {
+        return names.packages.length;
+    }
+
+    public boolean isTag(String name) {
+        return Arrays.binarySearch(names.tags, name) >= 0;
+    }
+
+    public boolean isTarget(String name) {
+        return Arrays.binarySearch(names.targets, name) >= 0;
+    }
+
+    public boolean isPackage(String name) {
+        return Arrays.binarySearch(names.packages, name) >= 0;
+    }
+
+    /**
+     * Tags and build targets starting with a prefix, in name order. A name both a tag and a target is listed once.
+     * @param limit Maximum of names returned.
+     */
+    public List<String> completeTagOrTarget(String prefix, int limit) {
+        Names current = names;
+        List<String> tags = complete(current.tags, prefix, limit);
+        List<String> targets = complete(current.targets, prefix, limit);
+        if (targets.isEmpty()) {
+            return tags;
+        }
+
+        List<String> merged = new ArrayList<String>(tags);
+        for (String target : targets) {
+            if (Collections.binarySearch(tags, target) < 0) {
+                merged.add(target);
+            }
+        }
+        Collections.sort(merged);
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    /**
+     * Packages starting with a prefix, in name order.
+     * @param limit Maximum of names returned.
+     */
+    public List<String> completePackage(String prefix, int limit) {
+        return complete(names.packages, prefix, limit);
+    }
+
+    private static List<String> complete(String[] sorted, String prefix, int limit) {
+        int from = Arrays.binarySearch(sorted, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+
+        List<String> matches = new ArrayList<String>();
+        for (int i = from; i < sorted.length && matches.size() < limit && sorted[i].startsWith(prefix); i++) {
+            matches.add(sorted[i]);
+        }
+        return matches;
+    }
+
+    private static String[] sorted(List<String> names) {
+        String[] sorted = names.toArray(new String[names.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Snapshot of all names, replaced as a whole on refresh.
+     */
+    private static class Names {
+        private final String[] tags;
+        private final String[] targets;
+        private final String[] packages;
+        private final int event;
+        private final long loaded;
+
+        Names(String[] tags, String[] targets, String[] packages, int event, long loaded) {
+            this.tags = tags;
+            this.targets = targets;
+            this.packages = packages;
+            this.event = event;
+            this.loaded = loaded;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket limiting the rate of calls to a single Koji hub, owned by its KojiClientPool.
+ *
+ * The bucket holds up to one second worth of tokens, so short bursts are allowed up to the configured rate. Callers
+ * finding the bucket empty reserve a future token and sleep until it is due; reservations are handed out through a
+ * fair lock, so callers are served in arrival order and no job can starve the others.
+ */
+public class KojiRateLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Calls per second, 0 for no limit. Guarded by lock.
+     */
+    private double rate;
+    /**
+     * Available tokens, negative when tokens are already reserved by waiting callers. Guarded by lock.
+     */
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * Waits until a call is allowed.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            if (rate <= 0) {
+                return;
+            }
+            refill();
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+        } finally {
+            lock.unlock();
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(getBurst(), tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    private double getBurst() {
+        return Math.max(1, rate);
+    }
+
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param rate Calls per second, 0 for no limit.
+     */
+    public void setRate(double rate) {
+        lock.lock();
+        try {
+            if (this.rate > 0) {
+                refill();
+            } else {
+                tokens = Math.max(1, rate);
+                lastRefillNanos = System.nanoTime();
+            }
+            this.rate = Math.max(0, rate);
+            tokens = Math.min(tokens, getBurst());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.common.TypeFactory;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.apache.xmlrpc.parser.XmlRpcResponseParser;
+import org.apache.xmlrpc.util.SAXParsers;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response parser telling MyTypeFactory when the response is a fault, so that the fault struct is parsed as a plain map
+ * and reported as XmlRpcException instead of being mapped to a model object.
+ */
+class KojiResponseParser extends XmlRpcResponseParser {
+
+    /**
+     * Element nesting: 0 = methodResponse, 1 = params or fault.
+     */
+    private int depth;
+
+    KojiResponseParser(XmlRpcStreamRequestConfig pConfig, TypeFactory pTypeFactory) {
+        super(pConfig, pTypeFactory);
+    }
+
+    /**
+     * Parses a response the same way as XmlRpcStreamTransport.readResponse().
+     * @return De-marshalled result.
+     * @throws XmlRpcException with fault code and string of a fault response.
+     */
+    static Object parse(XmlRpcStreamRequestConfig pConfig, TypeFactory pTypeFactory, InputStream pStream)
+            throws XmlRpcException {
+        KojiResponseParser parser = new KojiResponseParser(pConfig, pTypeFactory);
+        try {
+            XMLReader reader = SAXParsers.newXMLReader();
+            reader.setContentHandler(parser);
+            reader.parse(new InputSource(pStream));
+        } catch (SAXException e) {
+            throw new XmlRpcClientException("Failed to parse server's response: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new XmlRpcClientException("Failed to read server's response: " + e.getMessage(), e);
+        }
+
+        if (parser.isSuccess()) {
+            return parser.getResult();
+        }
+        Throwable cause = parser.getErrorCause();
+        if (cause == null) {
+            throw new XmlRpcException(parser.getErrorCode(), parser.getErrorMessage());
+        }
+        if (cause instanceof XmlRpcException) {
+            throw (XmlRpcException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new XmlRpcException(parser.getErrorCode(), parser.getErrorMessage(), cause);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        depth = 0;
+        super.startDocument();
+    }
+
+    @Override
+    public void startElement(String pURI, String pLocalName, String pQName, Attributes pAttrs) throws SAXException {
+        if (depth == 1 && "".equals(pURI) && "fault".equals(pLocalName)) {
+            MyTypeFactory.expectFault();
+        }
+        depth++;
+        super.startElement(pURI, pLocalName, pQName, pAttrs);
+    }
+
+    @Override
+    public void endElement(String pURI, String pLocalName, String pQName) throws SAXException {
+        depth--;
+        super.endElement(pURI, pLocalName, pQName);
+    }
+}
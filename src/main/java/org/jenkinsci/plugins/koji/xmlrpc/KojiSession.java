@@ -30,6 +30,11 @@ public class KojiSession {
      */
     private String kojiInstanceURL;
 
+    /**
+     * Last time the session was known to be valid on the hub, either by successful login or by validation.
+     */
+    private volatile long lastValidated;
+
     /**
      * Create a Koji Session based on de-marshalling of XMl-RPC result and current Koji Hub XML-RPC URL.
      * @param kojiInstanceURL XML-RPC hub URL.
@@ -52,6 +57,27 @@ public class KojiSession {
 
         encodedSessionId = encodeUTF(sessionId);
         encodedSessionKey = encodeUTF(sessionKey);
+        lastValidated = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the session as confirmed valid by the hub.
+     */
+    public void markValidated() {
+        lastValidated = System.currentTimeMillis();
+    }
+
+    /**
+     * Sessions that were not confirmed valid for a while should be checked against the hub before reuse.
+     * @param validationIntervalMillis How long a confirmed session is trusted without asking the hub.
+     * @return True if the session should be validated.
+     */
+    public boolean needsValidation(long validationIntervalMillis) {
+        return System.currentTimeMillis() - lastValidated > validationIntervalMillis;
+    }
+
+    public String getKojiInstanceURL() {
+        return kojiInstanceURL;
     }
 
     /**
@@ -82,6 +108,13 @@ public class KojiSession {
         return sessionIdInt.toString();
     }
 
+    /**
+     * Hub session id, identifies the session but unlike the session key is no secret.
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
     /**
      * Constructs URL that has embedded authentication.
      * @return Koji XML-RPC URL hub with authentication parameters put into HTTP format.
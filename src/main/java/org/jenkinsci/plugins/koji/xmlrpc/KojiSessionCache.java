@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller-wide cache of Koji sessions keyed by hub URL and user identity. Builds logging in with the same credentials
+ * reuse one hub session instead of creating a new one per build. For password logins the identity includes a salted
+ * digest of the password, see passwordIdentity(), so a wrong password never gets the session of the right one.
+ *
+ * Cached sessions are validated lazily: a session confirmed valid within the validation interval is reused as is,
+ * older ones are checked against the hub first. Sessions expiring in between are detected by auth faults in KojiClient,
+ * which logs in again and replaces the cached session.
+ */
+public class KojiSessionCache {
+
+    /**
+     * Default time a validated session is trusted without asking the hub.
+     */
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Singleton.
+     */
+    private static final KojiSessionCache instance = new KojiSessionCache();
+
+    /**
+     * Salt of password digests, new with every controller start.
+     */
+    private static final byte[] SALT = new byte[16];
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+    }
+
+    private final ConcurrentMap<String, KojiSession> sessions = new ConcurrentHashMap<String, KojiSession>();
+
+    private volatile long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong relogins = new AtomicLong();
+
+    public static KojiSessionCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Identity a password login's session is cached under: the user name with a salted SHA-256 digest of the password.
+     * The password itself is never kept in the cache.
+     */
+    public static String passwordIdentity(String userName, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SALT);
+            digest.update(password.getBytes("UTF-8"));
+            return userName + '\n' + new BigInteger(1, digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not available", e);
+        }
+    }
+
+    /**
+     * Looks up a cached session.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     * @param userName Identity the session belongs to, see passwordIdentity() for password logins.
+     * @return Cached session or null.
+     */
+    public KojiSession get(String kojiInstanceURL, String userName) {
+        return sessions.get(key(kojiInstanceURL, userName));
+    }
+
+    public void put(String kojiInstanceURL, String userName, KojiSession session) {
+        sessions.put(key(kojiInstanceURL, userName), session);
+    }
+
+    /**
+     * Drops a session known to be invalid. Does nothing if the cache already holds a newer session, which happens when
+     * another build logged in again in the meantime.
+     */
+    public void invalidate(String kojiInstanceURL, String userName, KojiSession session) {
+        sessions.remove(key(kojiInstanceURL, userName), session);
+    }
+
+    /**
+     * Drops all cached sessions, e.g. after credentials change in global configuration.
+     */
+    public void clear() {
+        sessions.clear();
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordRelogin() {
+        relogins.incrementAndGet();
+    }
+
+    /**
+     * Number of logins served from cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of logins that had to create a new hub session.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of transparent logins done after the hub rejected an expired session.
+     */
+    public long getRelogins() {
+        return relogins.get();
+    }
+
+    public int getSize() {
+        return sessions.size();
+    }
+
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    private static String key(String kojiInstanceURL, String userName) {
+        return kojiInstanceURL + '\n' + userName;
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deduplication of identical concurrent read calls to a single Koji hub, owned by its KojiClientPool.
+ *
+ * The first caller of a given method and parameters executes the call, callers asking for the same while it is in
+ * flight wait for it and get the same result or exception. Nothing is kept once the call completes, see KojiBuildCache
+ * for caching. Results are shared between callers and must not be modified.
+ */
+public class KojiSingleFlight {
+
+    private final ConcurrentMap<String, FutureTask<Object>> inFlight = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Executes a call unless the same call is already in flight.
+     * @param key Identifies the call, e.g. method name and parameters.
+     * @param call Performs the call.
+     * @return Result of this or the already running call.
+     */
+    Object execute(String key, Callable<Object> call) throws XmlRpcException {
+        FutureTask<Object> task = new FutureTask<Object>(call);
+        FutureTask<Object> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            executed.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        } else {
+            coalesced.incrementAndGet();
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XmlRpcException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XmlRpcException) {
+                throw (XmlRpcException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new XmlRpcException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Calls sent to the hub.
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Calls answered by joining an identical call in flight.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlrpc.XmlRpcException;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Controller-wide cache of TLS contexts holding Koji client certificates, keyed by certificate path.
+ *
+ * The certificate file is the one Koji CLI uses ("cert" in Koji CLI configuration): a PEM file with the client
+ * certificate chain and an unencrypted private key, either PKCS#8 ("PRIVATE KEY") or PKCS#1 RSA ("RSA PRIVATE KEY").
+ * Server certificates are checked against the JVM trust store.
+ *
+ * Building a context parses the key and certificates, so it is only done again when the file changes. Reusing the
+ * context also reuses its TLS session cache: connections opened later, by any build, resume the session instead of
+ * doing a full handshake.
+ */
+public class KojiSslContextCache {
+
+    /**
+     * How long TLS sessions are kept for resumption, in seconds.
+     */
+    private static final int SESSION_TIMEOUT_SECONDS = 8 * 60 * 60;
+    private static final int SESSION_CACHE_SIZE = 100;
+
+    private static final Pattern PEM_BLOCK =
+            Pattern.compile("-----BEGIN ([A-Z0-9 ]+)-----([A-Za-z0-9+/=\\s]+)-----END \\1-----");
+    /**
+     * DER encoded AlgorithmIdentifier of rsaEncryption (1.2.840.113549.1.1.1) with NULL parameters.
+     */
+    private static final byte[] RSA_ALGORITHM = {0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,
+            (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00};
+
+    /**
+     * Singleton.
+     */
+    private static final KojiSslContextCache instance = new KojiSslContextCache();
+
+    private final ConcurrentMap<String, Entry> contexts = new ConcurrentHashMap<String, Entry>();
+
+    public static KojiSslContextCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the TLS context for a client certificate, loading it on first use or after the file changed.
+     * @param certificatePath PEM file with client certificate and private key.
+     * @throws XmlRpcException if the file cannot be read or holds no usable certificate and key.
+     */
+    public SSLContext get(String certificatePath) throws XmlRpcException {
+        File file = new File(certificatePath);
+        if (!file.isFile()) {
+            throw new XmlRpcException("Koji client certificate " + certificatePath + " not found");
+        }
+
+        Entry entry = contexts.get(certificatePath);
+        if (entry != null && entry.isCurrent(file)) {
+            return entry.context;
+        }
+        Entry loaded = new Entry(file.lastModified(), file.length(), load(file));
+        contexts.put(certificatePath, loaded);
+
+        return loaded.context;
+    }
+
+    /**
+     * Drops all cached contexts, e.g. after the certificate path changes in global configuration.
+     */
+    public void clear() {
+        contexts.clear();
+    }
+
+    private static SSLContext load(File file) throws XmlRpcException {
+        try {
+            String pem = FileUtils.readFileToString(file, "US-ASCII");
+            List<Certificate> chain = new ArrayList<Certificate>();
+            PrivateKey key = null;
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            Matcher matcher = PEM_BLOCK.matcher(pem);
+            while (matcher.find()) {
+                String type = matcher.group(1);
+                byte[] der = DatatypeConverter.parseBase64Binary(matcher.group(2).replaceAll("\\s", ""));
+                if ("CERTIFICATE".equals(type)) {
+                    chain.add(certificateFactory.generateCertificate(new ByteArrayInputStream(der)));
+                } else if ("PRIVATE KEY".equals(type)) {
+                    key = privateKey(der);
+                } else if ("RSA PRIVATE KEY".equals(type)) {
+                    key = privateKey(rsaToPkcs8(der));
+                } else if (type.endsWith("PRIVATE KEY")) {
+                    throw new XmlRpcException("Unsupported private key \"" + type + "\" in " + file
+                            + ", convert it to an unencrypted PKCS#8 key");
+                }
+            }
+            if (chain.isEmpty() || key == null) {
+                throw new XmlRpcException(file + " must contain both client certificate and private key in PEM format");
+            }
+
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+            char[] password = new char[0];
+            keyStore.setKeyEntry("koji", key, password, chain.toArray(new Certificate[chain.size()]));
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, password);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagerFactory.getKeyManagers(), null, null);
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+
+            return context;
+        } catch (IOException e) {
+            throw new XmlRpcException("Unable to read Koji client certificate " + file + ": " + e.getMessage(), e);
+        } catch (GeneralSecurityException e) {
+            throw new XmlRpcException("Invalid Koji client certificate " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static PrivateKey privateKey(byte[] pkcs8) throws GeneralSecurityException {
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(pkcs8);
+        try {
+            return KeyFactory.getInstance("RSA").generatePrivate(spec);
+        } catch (GeneralSecurityException e) {
+            return KeyFactory.getInstance("EC").generatePrivate(spec);
+        }
+    }
+
+    /**
+     * Wraps a PKCS#1 RSAPrivateKey into a PKCS#8 PrivateKeyInfo, the only encoding KeyFactory reads.
+     */
+    private static byte[] rsaToPkcs8(byte[] pkcs1) {
+        ByteArrayOutputStream info = new ByteArrayOutputStream();
+        // version 0
+        info.write(0x02);
+        info.write(0x01);
+        info.write(0x00);
+        info.write(RSA_ALGORITHM, 0, RSA_ALGORITHM.length);
+        derHeader(info, 0x04, pkcs1.length);
+        info.write(pkcs1, 0, pkcs1.length);
+
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        derHeader(sequence, 0x30, info.size());
+        byte[] content = info.toByteArray();
+        sequence.write(content, 0, content.length);
+        return sequence.toByteArray();
+    }
+
+    private static void derHeader(ByteArrayOutputStream out, int tag, int length) {
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+            return;
+        }
+        int bytes = length > 0xffffff ? 4 : length > 0xffff ? 3 : length > 0xff ? 2 : 1;
+        out.write(0x80 | bytes);
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write(length >>> (8 * i));
+        }
+    }
+
+    private static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final SSLContext context;
+
+        Entry(long lastModified, long length, SSLContext context) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.context = context;
+        }
+
+        boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
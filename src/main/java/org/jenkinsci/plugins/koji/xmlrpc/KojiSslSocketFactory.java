@@ -0,0 +1,146 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * HTTPS sockets of a Koji hub's connection pool, created from a cached SSLContext.
+ *
+ * Sockets are connected first and then layered with TLS for the hub host name, so the context's session cache finds
+ * the session of an earlier connection to the same host and port and resumes it. Commons HttpClient does not check
+ * host names, so the server certificate is verified against the host name here after the handshake.
+ *
+ * Instances are equal if they use the same context, which is what makes the connection manager reuse connections.
+ */
+class KojiSslSocketFactory implements SecureProtocolSocketFactory {
+
+    private static final int SAN_DNS = 2;
+    private static final int SAN_IP = 7;
+
+    private final SSLContext context;
+
+    KojiSslSocketFactory(SSLContext context) {
+        this.context = context;
+    }
+
+    SSLContext getContext() {
+        return context;
+    }
+
+    public Socket createSocket(String host, int port) throws IOException {
+        return createSocket(host, port, null, 0, null);
+    }
+
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+        return createSocket(host, port, localAddress, localPort, null);
+    }
+
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort,
+                               HttpConnectionParams params) throws IOException {
+        Socket socket = new Socket();
+        try {
+            if (localAddress != null) {
+                socket.bind(new InetSocketAddress(localAddress, localPort));
+            }
+            socket.connect(new InetSocketAddress(host, port), params == null ? 0 : params.getConnectionTimeout());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return createSocket(socket, host, port, true);
+    }
+
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) context.getSocketFactory().createSocket(socket, host, port, autoClose);
+        try {
+            sslSocket.startHandshake();
+            verifyHostName(host, (X509Certificate) sslSocket.getSession().getPeerCertificates()[0]);
+        } catch (IOException e) {
+            sslSocket.close();
+            throw e;
+        }
+
+        return sslSocket;
+    }
+
+    /**
+     * Checks that a server certificate was issued for the host, by subject alternative names if there are any, by
+     * common name otherwise.
+     */
+    static void verifyHostName(String host, X509Certificate certificate) throws SSLPeerUnverifiedException {
+        String hostName = host.toLowerCase(Locale.ENGLISH);
+        boolean hasDnsNames = false;
+        try {
+            Collection<List<?>> alternativeNames = certificate.getSubjectAlternativeNames();
+            if (alternativeNames != null) {
+                for (List<?> name : alternativeNames) {
+                    int type = (Integer) name.get(0);
+                    if (type == SAN_DNS) {
+                        hasDnsNames = true;
+                        if (matches(hostName, (String) name.get(1))) {
+                            return;
+                        }
+                    } else if (type == SAN_IP && hostName.equals(name.get(1))) {
+                        return;
+                    }
+                }
+            }
+        } catch (CertificateParsingException e) {
+            throw new SSLPeerUnverifiedException("Unable to read names of certificate of " + host + ": " + e.getMessage());
+        }
+
+        if (!hasDnsNames) {
+            try {
+                for (Rdn rdn : new LdapName(certificate.getSubjectX500Principal().getName()).getRdns()) {
+                    if ("CN".equalsIgnoreCase(rdn.getType()) && matches(hostName, rdn.getValue().toString())) {
+                        return;
+                    }
+                }
+            } catch (InvalidNameException e) {
+                throw new SSLPeerUnverifiedException("Unable to read subject of certificate of " + host + ": " + e.getMessage());
+            }
+        }
+
+        throw new SSLPeerUnverifiedException("Certificate of Koji hub " + host + " was issued for "
+                + certificate.getSubjectX500Principal().getName());
+    }
+
+    /**
+     * Matches a host name against a certificate name, which may have a wildcard as its leftmost label.
+     */
+    private static boolean matches(String hostName, String certificateName) {
+        String name = certificateName.toLowerCase(Locale.ENGLISH);
+        if (!name.startsWith("*.")) {
+            return hostName.equals(name);
+        }
+        int dot = hostName.indexOf('.');
+        return dot > 0 && hostName.substring(dot).equals(name.substring(1));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof KojiSslSocketFactory && ((KojiSslSocketFactory) obj).context == context;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(context);
+    }
+}
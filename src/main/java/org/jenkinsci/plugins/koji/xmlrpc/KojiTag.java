@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.Map;
+
+/**
+ * Koji tag as returned by getTag or listTags.
+ */
+public class KojiTag {
+
+    /**
+     * Maps tag structs to KojiTag during parsing.
+     */
+    static final MyTypeFactory.StructMapper MAPPER = new MyTypeFactory.StructMapper() {
+        public Object map(Map<String, ?> struct) {
+            return fromStruct(struct);
+        }
+    };
+
+    private final int id;
+    private final String name;
+    private final String arches;
+    private final boolean locked;
+    private final String perm;
+    private final boolean mavenSupport;
+    private final boolean mavenIncludeAll;
+
+    KojiTag(int id, String name, String arches, boolean locked, String perm, boolean mavenSupport,
+            boolean mavenIncludeAll) {
+        this.id = id;
+        this.name = name;
+        this.arches = arches;
+        this.locked = locked;
+        this.perm = perm;
+        this.mavenSupport = mavenSupport;
+        this.mavenIncludeAll = mavenIncludeAll;
+    }
+
+    /**
+     * De-marshalls a tag struct.
+     * @param struct XML-RPC struct describing a tag.
+     */
+    public static KojiTag fromStruct(Map<String, ?> struct) {
+        return new KojiTag(
+                Structs.intValue(struct, "id", 0),
+                Structs.internedValue(struct, "name"),
+                Structs.internedValue(struct, "arches"),
+                Structs.booleanValue(struct, "locked"),
+                Structs.internedValue(struct, "perm"),
+                Structs.booleanValue(struct, "maven_support"),
+                Structs.booleanValue(struct, "maven_include_all"));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getArches() {
+        return arches;
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    public String getPerm() {
+        return perm;
+    }
+
+    public boolean isMavenSupport() {
+        return mavenSupport;
+    }
+
+    public boolean isMavenIncludeAll() {
+        return mavenIncludeAll;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,223 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory index of builds tagged into a Koji tag, kept up to date incrementally.
+ *
+ * The first sync lists the whole tag as of the current hub event. Every later sync only asks the hub for tag_listing
+ * history after the last event seen and applies the tag / untag changes in event order, so a quiet tag costs a single
+ * getLastEvent call and a busy one a small history query instead of a full listTagged rescan. Latest build lookups
+ * cached for a changed tag are invalidated in KojiBuildCache.
+ */
+public class KojiTagIndex {
+
+    /**
+     * Indexes keyed by hub URL and tag name.
+     */
+    private static final ConcurrentMap<String, KojiTagIndex> indexes = new ConcurrentHashMap<String, KojiTagIndex>();
+
+    private final String kojiInstanceURL;
+    private final String tag;
+    /**
+     * Tagged builds by build id.
+     */
+    private final Map<Integer, KojiBuild> builds = new LinkedHashMap<Integer, KojiBuild>();
+    /**
+     * Hub event the index is current as of, 0 before the first sync.
+     */
+    private int lastEvent;
+
+    private KojiTagIndex(String kojiInstanceURL, String tag) {
+        this.kojiInstanceURL = kojiInstanceURL;
+        this.tag = tag;
+    }
+
+    /**
+     * Gets the shared index of a tag, not synced yet if new.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     * @param tag Koji tag
+     */
+    public static KojiTagIndex forTag(String kojiInstanceURL, String tag) {
+        String key = kojiInstanceURL + '\n' + tag;
+        KojiTagIndex index = indexes.get(key);
+        if (index == null) {
+            KojiTagIndex newIndex = new KojiTagIndex(kojiInstanceURL, tag);
+            index = indexes.putIfAbsent(key, newIndex);
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Drops the indexes of a tag no job watches any more, on all hubs.
+     */
+    public static void remove(String tag) {
+        String suffix = '\n' + tag;
+        for (Iterator<String> it = indexes.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().endsWith(suffix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with the hub.
+     * @param koji Client of the hub the index belongs to.
+     * @return Number of builds tagged or untagged since the previous sync, all builds on the first sync.
+     */
+    public int sync(KojiClient koji) throws XmlRpcException {
+        return sync(koji, koji.getLastEvent(), null);
+    }
+
+    /**
+     * Brings the index up to date with the hub as of a known event, e.g. shared by indexes of many tags.
+     * @param koji Client of the hub the index belongs to.
+     * @param event Current hub event, see KojiClient.getLastEvent().
+     * @param tagged Receives builds newly tagged since the previous sync, may be null. Not called on the first sync,
+     *               nor for builds untagged again or tagged already at the previous sync.
+     * @return Number of builds tagged or untagged since the previous sync, all builds on the first sync.
+     */
+    public synchronized int sync(KojiClient koji, int event, KojiClient.BuildHandler tagged) throws XmlRpcException {
+        if (lastEvent == 0) {
+            return fullSync(koji, event);
+        }
+        if (event == lastEvent) {
+            return 0;
+        }
+
+        List<Change> changes = new ArrayList<Change>();
+        for (Map<String, ?> row : koji.queryTagHistory(tag, lastEvent)) {
+            int buildId = Structs.intValue(row, "build_id", 0);
+            int created = Structs.intValue(row, "create_event", 0);
+            int revoked = Structs.intValue(row, "revoke_event", 0);
+            if (created > lastEvent) {
+                changes.add(new Change(created, buildId, fromHistory(row)));
+            }
+            if (revoked > lastEvent) {
+                changes.add(new Change(revoked, buildId, null));
+            }
+        }
+        Collections.sort(changes, new Comparator<Change>() {
+            public int compare(Change c1, Change c2) {
+                return c1.event < c2.event ? -1 : (c1.event == c2.event ? 0 : 1);
+            }
+        });
+
+        Set<Integer> taggedBefore = new HashSet<Integer>();
+        for (Change change : changes) {
+            if (builds.containsKey(change.buildId)) {
+                taggedBefore.add(change.buildId);
+            }
+        }
+        int lastChange = event;
+        for (Change change : changes) {
+            if (change.build != null) {
+                builds.put(change.buildId, change.build);
+            } else {
+                builds.remove(change.buildId);
+            }
+            lastChange = Math.max(lastChange, change.event);
+        }
+        if (tagged != null) {
+            for (Change change : changes) {
+                // once per build, for builds still tagged after all changes
+                if (change.build != null && !taggedBefore.contains(change.buildId) && builds.containsKey(change.buildId)
+                        && taggedBefore.add(change.buildId)) {
+                    tagged.handleBuild(builds.get(change.buildId));
+                }
+            }
+        }
+        if (!changes.isEmpty()) {
+            KojiBuildCache.getInstance().invalidateTag(kojiInstanceURL, tag, lastChange);
+        }
+        lastEvent = lastChange;
+        return changes.size();
+    }
+
+    /**
+     * Lists the whole tag as of an event, so history after that event can be applied on top of it.
+     */
+    private int fullSync(KojiClient koji, int event) throws XmlRpcException {
+        builds.clear();
+        KojiClient.BuildParams buildParams = new KojiClient.BuildParamsBuilder().setTag(tag).setEvent(event).build();
+        koji.listTaggedBuilds(buildParams, new KojiClient.BuildHandler() {
+            public void handleBuild(KojiBuild build) {
+                builds.put(build.getId(), build);
+            }
+        });
+        lastEvent = event;
+        return builds.size();
+    }
+
+    /**
+     * History rows carry build fields joined as "package.name", "build.version" etc., renamed here to the keys used by
+     * listTagged.
+     */
+    private static KojiBuild fromHistory(Map<String, ?> row) {
+        Map<String, Object> struct = new HashMap<String, Object>(row);
+        struct.put("package_name", row.get("package.name"));
+        struct.put("version", row.get("build.version"));
+        struct.put("release", row.get("build.release"));
+        struct.put("epoch", row.get("build.epoch"));
+        struct.put("state", row.get("build.state"));
+        struct.put("tag_name", row.get("tag.name"));
+        return KojiBuild.fromStruct(struct);
+    }
+
+    /**
+     * @return Builds currently tagged.
+     */
+    public synchronized List<KojiBuild> getBuilds() {
+        return new ArrayList<KojiBuild>(builds.values());
+    }
+
+    public synchronized int size() {
+        return builds.size();
+    }
+
+    /**
+     * @return Hub event the index is current as of, 0 if never synced.
+     */
+    public synchronized int getLastEvent() {
+        return lastEvent;
+    }
+
+    /**
+     * Forgets all builds, the next sync lists the whole tag again.
+     */
+    public synchronized void reset() {
+        builds.clear();
+        lastEvent = 0;
+    }
+
+    /**
+     * Build tagged (build set) or untagged (build null) at an event.
+     */
+    private static class Change {
+        private final int event;
+        private final int buildId;
+        private final KojiBuild build;
+
+        Change(int event, int buildId, KojiBuild build) {
+            this.event = event;
+            this.buildId = buildId;
+            this.build = build;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.Map;
+
+/**
+ * Koji task as returned by getTaskInfo.
+ */
+public class KojiTask {
+
+    /**
+     * Maps task structs to KojiTask during parsing.
+     */
+    static final MyTypeFactory.StructMapper MAPPER = new MyTypeFactory.StructMapper() {
+        public Object map(Map<String, ?> struct) {
+            return fromStruct(struct);
+        }
+    };
+
+    private final int id;
+    private final String method;
+    private final TaskState state;
+    private final int parent;
+    private final int ownerId;
+    private final int hostId;
+    private final int channelId;
+    private final int priority;
+    private final String arch;
+    private final String label;
+    private final long createTime;
+    private final long startTime;
+    private final long completionTime;
+
+    KojiTask(int id, String method, TaskState state, int parent, int ownerId, int hostId, int channelId, int priority,
+             String arch, String label, long createTime, long startTime, long completionTime) {
+        this.id = id;
+        this.method = method;
+        this.state = state;
+        this.parent = parent;
+        this.ownerId = ownerId;
+        this.hostId = hostId;
+        this.channelId = channelId;
+        this.priority = priority;
+        this.arch = arch;
+        this.label = label;
+        this.createTime = createTime;
+        this.startTime = startTime;
+        this.completionTime = completionTime;
+    }
+
+    /**
+     * De-marshalls a task struct.
+     * @param struct XML-RPC struct describing a task.
+     */
+    public static KojiTask fromStruct(Map<String, ?> struct) {
+        return new KojiTask(
+                Structs.intValue(struct, "id", 0),
+                Structs.internedValue(struct, "method"),
+                TaskState.fromCode(Structs.intValue(struct, "state", -1)),
+                Structs.intValue(struct, "parent", 0),
+                Structs.intValue(struct, "owner", 0),
+                Structs.intValue(struct, "host_id", 0),
+                Structs.intValue(struct, "channel_id", 0),
+                Structs.intValue(struct, "priority", 0),
+                Structs.internedValue(struct, "arch"),
+                Structs.stringValue(struct, "label"),
+                Structs.millisValue(struct, "create_ts"),
+                Structs.millisValue(struct, "start_ts"),
+                Structs.millisValue(struct, "completion_ts"));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public TaskState getState() {
+        return state;
+    }
+
+    /**
+     * Closed, canceled and failed tasks never change state again.
+     */
+    public boolean isFinished() {
+        return state == TaskState.CLOSED || state == TaskState.CANCELED || state == TaskState.FAILED;
+    }
+
+    public int getParent() {
+        return parent;
+    }
+
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    public int getHostId() {
+        return hostId;
+    }
+
+    public int getChannelId() {
+        return channelId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getArch() {
+        return arch;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return Times in milliseconds since epoch, 0 if not set.
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getCompletionTime() {
+        return completionTime;
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + method + " " + state;
+    }
+
+    /**
+     * Koji task states, ordinal matches the numeric code used by Koji.
+     */
+    public enum TaskState {
+        FREE, OPEN, CLOSED, CANCELED, ASSIGNED, FAILED;
+
+        static TaskState fromCode(int code) {
+            TaskState[] states = values();
+            return code >= 0 && code < states.length ? states[code] : null;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.xmlrpc.XmlRpcException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-wide watcher of Koji tasks, replacing one "koji watch-task" process per build.
+ *
+ * A single poller thread tracks all outstanding tasks. Tasks of one hub are queried together, as getTaskInfo calls
+ * batched in a multiCall. Polling backs off while nothing changes, from MIN_INTERVAL_MILLIS up to MAX_INTERVAL_MILLIS,
+ * and speeds up again as soon as a task changes state or a new task is watched. Every call of watch() gets its own
+ * future, completed with the task once it is finished. Cancelling a future only ends that caller's watch, the task is
+ * polled until no caller waits for it any more.
+ */
+public class KojiTaskWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(KojiTaskWatcher.class);
+
+    static final long MIN_INTERVAL_MILLIS = 5 * 1000;
+    static final long MAX_INTERVAL_MILLIS = 2 * 60 * 1000;
+
+    /**
+     * Singleton.
+     */
+    private static final KojiTaskWatcher instance = new KojiTaskWatcher();
+
+    /**
+     * Watched tasks per hub URL.
+     */
+    private final Map<String, HubTasks> hubs = new HashMap<String, HubTasks>();
+
+    private ScheduledExecutorService poller;
+
+    public static KojiTaskWatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts watching a task.
+     * @param kojiInstanceURL XML-RPC hub URL.
+     * @param taskId Numeric task id.
+     * @return Future completed with the task once it is closed, canceled or failed.
+     */
+    public synchronized ListenableFuture<KojiTask> watch(String kojiInstanceURL, int taskId) throws MalformedURLException {
+        HubTasks hub = hubs.get(kojiInstanceURL);
+        if (hub == null) {
+            hub = new HubTasks(KojiClient.getKojiClient(kojiInstanceURL));
+            hubs.put(kojiInstanceURL, hub);
+        }
+
+        List<SettableFuture<KojiTask>> futures = hub.futures.get(taskId);
+        if (futures == null) {
+            futures = new ArrayList<SettableFuture<KojiTask>>();
+            hub.futures.put(taskId, futures);
+        }
+        SettableFuture<KojiTask> future = SettableFuture.create();
+        futures.add(future);
+        hub.resetInterval();
+        startPoller();
+        return future;
+    }
+
+    /**
+     * Number of tasks currently watched on all hubs.
+     */
+    public synchronized int getWatchedTasks() {
+        int count = 0;
+        for (HubTasks hub : hubs.values()) {
+            count += hub.futures.size();
+        }
+        return count;
+    }
+
+    private void startPoller() {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Koji task watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            poller.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    pollDueHubs();
+                }
+            }, MIN_INTERVAL_MILLIS, MIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Polls every hub whose next poll is due. Hubs are polled outside of the lock, so new tasks can be watched
+     * meanwhile.
+     */
+    void pollDueHubs() {
+        List<HubTasks> due = new ArrayList<HubTasks>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Iterator<HubTasks> it = hubs.values().iterator(); it.hasNext(); ) {
+                HubTasks hub = it.next();
+                hub.removeCancelled();
+                if (hub.futures.isEmpty()) {
+                    it.remove();
+                } else if (hub.nextPoll <= now) {
+                    due.add(hub);
+                }
+            }
+        }
+
+        for (HubTasks hub : due) {
+            try {
+                poll(hub);
+            } catch (RuntimeException e) {
+                // keeps the poller thread alive for other hubs
+                logger.warn("Unexpected error watching Koji tasks on " + hub.koji.getKojiInstanceURL(), e);
+            }
+        }
+    }
+
+    private void poll(HubTasks hub) {
+        List<Integer> taskIds;
+        synchronized (this) {
+            taskIds = new ArrayList<Integer>(hub.futures.keySet());
+        }
+
+        Map<Integer, KojiTask> tasks;
+        Map<Integer, XmlRpcException> faults = new HashMap<Integer, XmlRpcException>();
+        try {
+            tasks = hub.koji.getTaskInfo(taskIds, faults);
+        } catch (XmlRpcException e) {
+            logger.warn("Unable to get Koji task info from " + hub.koji.getKojiInstanceURL() + ": " + e.getMessage());
+            synchronized (this) {
+                hub.backOff();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            boolean changed = false;
+            for (Integer taskId : taskIds) {
+                XmlRpcException fault = faults.get(taskId);
+                if (fault != null) {
+                    // only this task's lookup failed, others are unaffected
+                    hub.fail(taskId, fault);
+                    continue;
+                }
+                KojiTask task = tasks.get(taskId);
+                if (task == null) {
+                    hub.fail(taskId, new XmlRpcException("No task " + taskId + " on " + hub.koji.getKojiInstanceURL()));
+                    continue;
+                }
+
+                KojiTask.TaskState previous = hub.states.put(taskId, task.getState());
+                changed |= previous != task.getState();
+                if (task.isFinished()) {
+                    hub.states.remove(taskId);
+                    List<SettableFuture<KojiTask>> futures = hub.futures.remove(taskId);
+                    if (futures != null) {
+                        for (SettableFuture<KojiTask> future : futures) {
+                            future.set(task);
+                        }
+                    }
+                }
+            }
+
+            if (changed) {
+                hub.resetInterval();
+            } else {
+                hub.backOff();
+            }
+        }
+    }
+
+    /**
+     * Watched tasks of one hub and its polling schedule. Guarded by the watcher.
+     */
+    private static class HubTasks {
+        /**
+         * Anonymous client, getTaskInfo needs no session.
+         */
+        private final KojiClient koji;
+        /**
+         * Futures of all callers watching a task.
+         */
+        private final Map<Integer, List<SettableFuture<KojiTask>>> futures = new LinkedHashMap<Integer, List<SettableFuture<KojiTask>>>();
+        /**
+         * Last state seen per task, to detect changes.
+         */
+        private final Map<Integer, KojiTask.TaskState> states = new HashMap<Integer, KojiTask.TaskState>();
+        private long interval = MIN_INTERVAL_MILLIS;
+        private long nextPoll;
+
+        HubTasks(KojiClient koji) {
+            this.koji = koji;
+        }
+
+        void resetInterval() {
+            interval = MIN_INTERVAL_MILLIS;
+            nextPoll = Math.min(nextPoll, System.currentTimeMillis() + interval);
+        }
+
+        void backOff() {
+            interval = Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+            nextPoll = System.currentTimeMillis() + interval;
+        }
+
+        void fail(Integer taskId, XmlRpcException e) {
+            states.remove(taskId);
+            List<SettableFuture<KojiTask>> failed = futures.remove(taskId);
+            if (failed != null) {
+                for (SettableFuture<KojiTask> future : failed) {
+                    future.setException(e);
+                }
+            }
+        }
+
+        /**
+         * Drops cancelled futures, and tasks no caller waits for any more.
+         */
+        void removeCancelled() {
+            for (Iterator<Map.Entry<Integer, List<SettableFuture<KojiTask>>>> it = futures.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, List<SettableFuture<KojiTask>>> entry = it.next();
+                for (Iterator<SettableFuture<KojiTask>> waiting = entry.getValue().iterator(); waiting.hasNext(); ) {
+                    if (waiting.next().isCancelled()) {
+                        waiting.remove();
+                    }
+                }
+                if (entry.getValue().isEmpty()) {
+                    states.remove(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+    }
+}
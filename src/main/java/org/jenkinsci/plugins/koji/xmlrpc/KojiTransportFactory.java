@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcCommonsTransport;
+import org.apache.xmlrpc.client.XmlRpcCommonsTransportFactory;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+
+import java.io.InputStream;
+
+/**
+ * Transport factory used for all Koji calls, recording bytes sent and received per method in KojiMetrics.
+ *
+ * Received bytes are counted twice: as read from the connection and as parsed, after gzip decompression, showing what
+ * compression saves.
+ *
+ * If the hub's KojiClientPool has its own TLS setup, requests are sent to the pool's host configuration instead of
+ * the host in the URL, so they use the pool's socket factory. Login calls with Kerberos get a fresh SPNEGO token in the
+ * Authorization header.
+ */
+public class KojiTransportFactory extends XmlRpcCommonsTransportFactory {
+
+    /**
+     * Kerberos credentials for the login call running on the current thread.
+     */
+    private static final ThreadLocal<KojiKerberos> negotiate = new ThreadLocal<KojiKerberos>();
+
+    public KojiTransportFactory(XmlRpcClient pClient) {
+        super(pClient);
+    }
+
+    @Override
+    public XmlRpcTransport getTransport() {
+        return new MeteredTransport(this);
+    }
+
+    /**
+     * Authenticates calls of the current thread with Kerberos until clearNegotiate() is called.
+     */
+    static void negotiateWith(KojiKerberos kerberos) {
+        negotiate.set(kerberos);
+    }
+
+    static void clearNegotiate() {
+        negotiate.remove();
+    }
+
+    /**
+     * A new transport is created for every request, so it can keep per-request counters in fields.
+     */
+    static class MeteredTransport extends XmlRpcCommonsTransport {
+        private long requestBytes;
+        private CountingInputStream response;
+        private CountingInputStream decodedResponse;
+
+        MeteredTransport(XmlRpcCommonsTransportFactory pFactory) {
+            super(pFactory);
+        }
+
+        @Override
+        public Object sendRequest(XmlRpcRequest pRequest) throws XmlRpcException {
+            try {
+                return super.sendRequest(pRequest);
+            } finally {
+                KojiMetrics.getInstance().forMethod(pRequest.getMethodName()).addBytes(requestBytes,
+                        response == null ? 0 : response.getByteCount(),
+                        decodedResponse == null ? 0 : decodedResponse.getByteCount());
+            }
+        }
+
+        @Override
+        protected PostMethod newPostMethod(XmlRpcHttpClientConfig pConfig) {
+            HostConfiguration hostConfiguration = client.getHostConfiguration();
+            if (hostConfiguration.getHost() == null) {
+                return super.newPostMethod(pConfig);
+            }
+            // relative URI, HttpClient fills in the pool's host configuration
+            return new PostMethod(pConfig.getServerURL().getFile());
+        }
+
+        @Override
+        protected void initHttpHeaders(XmlRpcRequest pRequest) throws XmlRpcClientException {
+            super.initHttpHeaders(pRequest);
+            KojiKerberos kerberos = negotiate.get();
+            if (kerberos != null) {
+                String host = ((XmlRpcHttpClientConfig) pRequest.getConfig()).getServerURL().getHost();
+                try {
+                    method.setRequestHeader("Authorization", kerberos.negotiate(host));
+                } catch (XmlRpcException e) {
+                    throw new XmlRpcClientException(e.getMessage(), e.linkedException);
+                }
+            }
+        }
+
+        @Override
+        protected void writeRequest(ReqWriter pWriter) throws XmlRpcException {
+            super.writeRequest(pWriter);
+            requestBytes = Math.max(0, method.getRequestEntity().getContentLength());
+        }
+
+        @Override
+        protected InputStream getInputStream() throws XmlRpcException {
+            response = new CountingInputStream(super.getInputStream());
+            return response;
+        }
+
+        /**
+         * Gets the response already decompressed, if it was compressed. Parsed by KojiResponseParser, so that fault
+         * responses of calls with a struct mapper still end up as XmlRpcException.
+         */
+        @Override
+        protected Object readResponse(XmlRpcStreamRequestConfig pConfig, InputStream pStream) throws XmlRpcException {
+            decodedResponse = new CountingInputStream(pStream);
+            return KojiResponseParser.parse(pConfig, getClient().getTypeFactory(), decodedResponse);
+        }
+    }
+}
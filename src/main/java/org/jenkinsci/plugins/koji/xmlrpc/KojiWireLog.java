@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory log of raw XML-RPC exchanges, filled by the debug transport of MyXmlRpcCommonsTransportFactory.
+ *
+ * Bytes are captured on the fly while the request is written and the response is parsed, only up to maxEntryBytes
+ * per direction, so logging never buffers whole responses. Only every sampleEvery-th exchange is captured and the log
+ * keeps the last capacity exchanges, older ones are dropped.
+ */
+public class KojiWireLog {
+
+    public static final int DEFAULT_CAPACITY = 50;
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 64 * 1024;
+
+    /**
+     * Singleton.
+     */
+    private static final KojiWireLog instance = new KojiWireLog();
+
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+    private final AtomicLong exchanges = new AtomicLong();
+
+    private volatile int capacity = DEFAULT_CAPACITY;
+    private volatile int maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+    private volatile int sampleEvery = 1;
+
+    public static KojiWireLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Decides whether an exchange is captured.
+     * @return New entry to be filled, null if the exchange is not sampled.
+     */
+    Entry start(String methodName) {
+        long number = exchanges.incrementAndGet();
+        int every = sampleEvery;
+        if (every > 1 && number % every != 0) {
+            return null;
+        }
+        return new Entry(methodName, maxEntryBytes);
+    }
+
+    /**
+     * Adds a completed entry, dropping the oldest one if full.
+     */
+    synchronized void add(Entry entry) {
+        entries.addLast(entry);
+        while (entries.size() > capacity) {
+            entries.removeFirst();
+        }
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Writes all entries as plain text, oldest first.
+     */
+    public void dump(PrintWriter writer) {
+        for (Entry entry : getEntries()) {
+            writer.println("---- " + new Date(entry.time) + " " + entry.methodName + " ----");
+            writer.println("Request (" + entry.request.total + " bytes):");
+            writer.println(entry.request);
+            writer.println("Response (" + entry.response.total + " bytes):");
+            writer.println(entry.response);
+            writer.println();
+        }
+        writer.flush();
+    }
+
+    /**
+     * @param capacity Number of exchanges kept.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @param maxEntryBytes Bytes kept per request and per response, the rest is only counted.
+     */
+    public void setMaxEntryBytes(int maxEntryBytes) {
+        this.maxEntryBytes = Math.max(0, maxEntryBytes);
+    }
+
+    /**
+     * @param sampleEvery Capture every n-th exchange, 1 captures all.
+     */
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    /**
+     * Single captured exchange.
+     */
+    public static class Entry {
+        private final String methodName;
+        private final long time = System.currentTimeMillis();
+        private final CappedBuffer request;
+        private final CappedBuffer response;
+
+        Entry(String methodName, int maxBytes) {
+            this.methodName = methodName;
+            this.request = new CappedBuffer(maxBytes);
+            this.response = new CappedBuffer(maxBytes);
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        OutputStream getRequestStream() {
+            return request;
+        }
+
+        OutputStream getResponseStream() {
+            return response;
+        }
+
+        public String getRequest() {
+            return request.toString();
+        }
+
+        public String getResponse() {
+            return response.toString();
+        }
+    }
+
+    /**
+     * Output stream keeping only the first maxBytes bytes and counting the rest.
+     */
+    static class CappedBuffer extends OutputStream {
+        private final byte[] buffer;
+        private int size;
+        private long total;
+
+        CappedBuffer(int maxBytes) {
+            buffer = new byte[maxBytes];
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (size < buffer.length) {
+                buffer[size++] = (byte) b;
+            }
+            total++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int kept = Math.min(len, buffer.length - size);
+            if (kept > 0) {
+                System.arraycopy(b, off, buffer, size, kept);
+                size += kept;
+            }
+            total += len;
+        }
+
+        @Override
+        public synchronized String toString() {
+            try {
+                String content = new String(buffer, 0, size, "UTF-8");
+                return total > size ? content + "\n... " + (total - size) + " more bytes" : content;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -1,22 +1,41 @@
 package org.jenkinsci.plugins.koji.xmlrpc;
 
 import org.apache.ws.commons.util.NamespaceContextImpl;
+import org.apache.xmlrpc.common.TypeFactory;
 import org.apache.xmlrpc.common.TypeFactoryImpl;
 import org.apache.xmlrpc.common.XmlRpcController;
 import org.apache.xmlrpc.common.XmlRpcStreamConfig;
+import org.apache.xmlrpc.parser.MapParser;
 import org.apache.xmlrpc.parser.NullParser;
+import org.apache.xmlrpc.parser.ObjectArrayParser;
 import org.apache.xmlrpc.parser.TypeParser;
+import org.apache.xmlrpc.serializer.MapSerializer;
 import org.apache.xmlrpc.serializer.NullSerializer;
+import org.apache.xmlrpc.serializer.ObjectArraySerializer;
 import org.apache.xmlrpc.serializer.TypeSerializer;
 import org.apache.xmlrpc.serializer.TypeSerializerImpl;
+import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
+import java.util.Map;
+
 /**
  * Custom TransportFactory handling extended XML-RPC specification allowing for null / None values.
+ *
+ * Also supports typed and streamed responses. When the current thread expects a response with a struct mapper, structs
+ * of the top level value (or of the top level array) are mapped directly to model objects like KojiBuild while being
+ * parsed. When a handler is registered, elements of the top level response array are passed to the handler one by one
+ * as they are parsed, instead of being collected into a single Object[]. Fault responses are never mapped or streamed,
+ * KojiResponseParser reports them by expectFault() before their struct is parsed.
  */
 public class MyTypeFactory extends TypeFactoryImpl {
 
+    /**
+     * Expectations about the response parsed by the current thread.
+     */
+    private static final ThreadLocal<ResponseState> responseState = new ThreadLocal<ResponseState>();
+
     public MyTypeFactory(XmlRpcController pController) {
         super(pController);
     }
@@ -28,6 +47,26 @@ public class MyTypeFactory extends TypeFactoryImpl {
     public TypeParser getParser(XmlRpcStreamConfig pConfig,
                                 NamespaceContextImpl pContext, String pURI, String pLocalName) {
 
+        ResponseState state = responseState.get();
+        if (state != null && !state.fault && "".equals(pURI)) {
+            // only the outermost value and elements of the outermost array are mapped and streamed, nested values are
+            // parsed as usual
+            if (state.topLevel) {
+                state.topLevel = false;
+                if (ObjectArraySerializer.ARRAY_TAG.equals(pLocalName)) {
+                    return new TopLevelArrayParser(pConfig, pContext, this, state);
+                }
+                if (state.mapper != null && MapSerializer.STRUCT_TAG.equals(pLocalName)) {
+                    return new MappingStructParser(pConfig, pContext, this, state.mapper);
+                }
+            } else if (state.elementPending) {
+                state.elementPending = false;
+                if (state.mapper != null && MapSerializer.STRUCT_TAG.equals(pLocalName)) {
+                    return new MappingStructParser(pConfig, pContext, this, state.mapper);
+                }
+            }
+        }
+
         if ("".equals(pURI) && NullSerializer.NIL_TAG.equals(pLocalName)) {
             return new NullParser();
         } else {
@@ -53,4 +92,133 @@ public class MyTypeFactory extends TypeFactoryImpl {
             return super.getSerializer(pConfig, pObject);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets expectations about the next response parsed by the current thread. Has to be followed by clearResponse()
+     * once the call finishes.
+     * @param mapper Maps top level structs to model objects, may be null.
+     * @param handler Receives elements of the top level array, may be null to collect them into Object[].
+     */
+    static void expectResponse(StructMapper mapper, ElementHandler handler) {
+        responseState.set(new ResponseState(mapper, handler));
+    }
+
+    static void clearResponse() {
+        responseState.remove();
+    }
+
+    /**
+     * Marks the response parsed by the current thread as a fault, its struct is then parsed as a plain map.
+     */
+    static void expectFault() {
+        ResponseState state = responseState.get();
+        if (state != null) {
+            state.fault = true;
+        }
+    }
+
+    /**
+     * Receives de-marshalled elements of a streamed response array.
+     */
+    interface ElementHandler {
+        void handleElement(Object element) throws SAXException;
+    }
+
+    /**
+     * Converts a de-marshalled struct to a model object.
+     */
+    interface StructMapper {
+        Object map(Map<String, ?> struct);
+    }
+
+    private static class ResponseState {
+        private final StructMapper mapper;
+        private final ElementHandler handler;
+        /**
+         * True until the parser for the outermost value is requested.
+         */
+        private boolean topLevel = true;
+        /**
+         * True when the next requested parser is for an element of the outermost array.
+         */
+        private boolean elementPending;
+        /**
+         * True once the response turned out to be a fault.
+         */
+        private boolean fault;
+
+        ResponseState(StructMapper mapper, ElementHandler handler) {
+            this.mapper = mapper;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Parser of the outermost response array. Marks its elements so that they get mapped, and hands every parsed
+     * element over to the handler instead of keeping it if streaming. The resulting array is empty when streaming.
+     */
+    private static class TopLevelArrayParser extends ObjectArrayParser {
+        private final ResponseState state;
+        /**
+         * Element nesting: 0 = array, 1 = data, 2 = value, 3 = type of an element.
+         */
+        private int depth;
+
+        TopLevelArrayParser(XmlRpcStreamConfig pConfig, NamespaceContextImpl pContext, TypeFactory pFactory,
+                            ResponseState state) {
+            super(pConfig, pContext, pFactory);
+            this.state = state;
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            depth = 0;
+            super.startDocument();
+        }
+
+        @Override
+        public void startElement(String pURI, String pLocalName, String pQName, Attributes pAttrs)
+                throws SAXException {
+            if (depth == 3) {
+                state.elementPending = true;
+            }
+            depth++;
+            super.startElement(pURI, pLocalName, pQName, pAttrs);
+        }
+
+        @Override
+        public void endElement(String pURI, String pLocalName, String pQName) throws SAXException {
+            if (--depth == 2) {
+                state.elementPending = false;
+            }
+            super.endElement(pURI, pLocalName, pQName);
+        }
+
+        @Override
+        protected void addResult(Object pValue) throws SAXException {
+            if (state.handler != null) {
+                state.handler.handleElement(pValue);
+            } else {
+                super.addResult(pValue);
+            }
+        }
+    }
+
+    /**
+     * Struct parser converting the finished struct with a mapper, so only the model object outlives parsing.
+     */
+    private static class MappingStructParser extends MapParser {
+        private final StructMapper mapper;
+
+        MappingStructParser(XmlRpcStreamConfig pConfig, NamespaceContextImpl pContext, TypeFactory pFactory,
+                            StructMapper mapper) {
+            super(pConfig, pContext, pFactory);
+            this.mapper = mapper;
+        }
+
+        @Override
+        protected void setResult(Object pResult) {
+            super.setResult(mapper.map((Map<String, ?>) pResult));
+        }
+    }
+}
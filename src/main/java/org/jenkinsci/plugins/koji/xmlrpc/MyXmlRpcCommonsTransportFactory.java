@@ -1,28 +1,49 @@
 package org.jenkinsci.plugins.koji.xmlrpc;
 
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
 import org.apache.xmlrpc.client.XmlRpcClient;
-import org.apache.xmlrpc.client.XmlRpcCommonsTransport;
-import org.apache.xmlrpc.client.XmlRpcCommonsTransportFactory;
 import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.common.XmlRpcStreamConfig;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.apache.xmlrpc.serializer.XmlWriterFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * This custom transport Factory allows for logging incoming and outgoing raw XML responses and requests.
  *
- * Used mainly for offline logging. Please see MyLogging utils for dependencies.
+ * Raw bytes are teed into a KojiWireLog entry while the request is serialized and while the response is parsed, so
+ * nothing is buffered beyond the wire log size caps. Completed entries are also logged on debug level. Compressed
+ * requests and responses are captured decompressed: requests are teed off below gzip, by the client's XML writer.
  */
 public class MyXmlRpcCommonsTransportFactory extends
-        XmlRpcCommonsTransportFactory {
+        KojiTransportFactory {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Entry of the exchange in progress, null if not sampled. The client is lent to one caller at a time, so there
+     * is at most one.
+     */
+    private KojiWireLog.Entry entry;
+
     public MyXmlRpcCommonsTransportFactory(XmlRpcClient pClient) {
         super(pClient);
+        final XmlWriterFactory writerFactory = pClient.getXmlWriterFactory();
+        pClient.setXmlWriterFactory(new XmlWriterFactory() {
+            public ContentHandler getXmlWriter(XmlRpcStreamConfig pConfig, OutputStream pStream) throws XmlRpcException {
+                KojiWireLog.Entry current = entry;
+                return writerFactory.getXmlWriter(pConfig,
+                        current == null ? pStream : new TeeOutputStream(pStream, current.getRequestStream()));
+            }
+        });
     }
 
     @Override
@@ -30,36 +51,36 @@ public class MyXmlRpcCommonsTransportFactory extends
         return new LoggingTransport(this);
     }
 
-    private class LoggingTransport extends XmlRpcCommonsTransport {
+    private class LoggingTransport extends MeteredTransport {
 
         public LoggingTransport(MyXmlRpcCommonsTransportFactory pFactory) {
             super(pFactory);
         }
 
-        /**
-         * Logs the request content in addition to the actual work.
-         */
         @Override
-        protected void writeRequest(final ReqWriter pWriter) throws XmlRpcException {
-            super.writeRequest(pWriter);
-            if (logger.isDebugEnabled()) {
-                MyLoggingUtils.logRequest(logger, method.getRequestEntity());
+        public Object sendRequest(XmlRpcRequest pRequest) throws XmlRpcException {
+            KojiWireLog wireLog = KojiWireLog.getInstance();
+            entry = wireLog.start(pRequest.getMethodName());
+            try {
+                return super.sendRequest(pRequest);
+            } finally {
+                KojiWireLog.Entry finished = entry;
+                entry = null;
+                if (finished != null) {
+                    wireLog.add(finished);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("---- Request ----\n" + finished.getRequest() + "\n---- Response ----\n" + finished.getResponse());
+                    }
+                }
             }
         }
 
         /**
-         * Logs the response from the server, and returns the contents of
-         * the response as a ByteArrayInputStream.
+         * Tees the decompressed response into the capped entry while it is being parsed.
          */
         @Override
-        protected InputStream getInputStream() throws XmlRpcException {
-            InputStream istream = super.getInputStream();
-            if (logger.isDebugEnabled()) {
-                return new ByteArrayInputStream(
-                        MyLoggingUtils.logResponse(logger, istream).getBytes());
-            } else {
-                return istream;
-            }
+        protected Object readResponse(XmlRpcStreamRequestConfig pConfig, InputStream pStream) throws XmlRpcException {
+            return super.readResponse(pConfig, entry == null ? pStream : new TeeInputStream(pStream, entry.getResponseStream()));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import java.util.Map;
+
+/**
+ * Helpers for reading values out of de-marshalled XML-RPC structs. The library reports every struct as
+ * Map&lt;String, String&gt;, however values keep their XML-RPC type (Integer, Double, Boolean, String or null).
+ */
+final class Structs {
+
+    private Structs() {
+    }
+
+    static int intValue(Map<String, ?> struct, String key, int defaultValue) {
+        Object value = struct.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt((String) value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Koji timestamps are seconds since epoch, usually with a fraction.
+     * @return Milliseconds since epoch or 0 if not set.
+     */
+    static long millisValue(Map<String, ?> struct, String key) {
+        Object value = struct.get(key);
+        if (value instanceof Number) {
+            return (long) (((Number) value).doubleValue() * 1000);
+        }
+        return 0;
+    }
+
+    static boolean booleanValue(Map<String, ?> struct, String key) {
+        Object value = struct.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return false;
+    }
+
+    static String stringValue(Map<String, ?> struct, String key) {
+        Object value = struct.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Names repeat across thousands of builds (package names, versions, owners, tags), interning keeps a single copy.
+     */
+    static String internedValue(Map<String, ?> struct, String key) {
+        String value = stringValue(struct, key);
+        return value == null ? null : value.intern();
+    }
+}
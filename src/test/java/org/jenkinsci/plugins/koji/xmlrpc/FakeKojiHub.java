@@ -0,0 +1,935 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.apache.xmlrpc.parser.XmlRpcRequestParser;
+import org.apache.xmlrpc.util.SAXParsers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process fake Koji hub speaking XML-RPC over local HTTP, for testing the plugin offline and under load.
+ *
+ * Implements the hub calls the plugin makes: hello, login, logout, showSession, getLoggedInUser, getBuild,
+ * getLatestBuilds, listTagged, listArchives, listTags, getBuildTargets, listPackages, getLastEvent, queryHistory,
+ * mavenBuild, getTaskInfo and multiCall.
+ * Sessions are passed in the URL as with a real hub. Requests and responses are gzip compressed if the client asks for it.
+ *
+ * The dataset is generated rather than stored: every tag holds the same packages "package-NNNNN", each with
+ * buildsPerPackage builds versioned 1.0.0, 1.0.1, ... of which the highest one is the latest. Any dataset size costs
+ * the same memory, listTagged responses are streamed as they are generated. Every tag has a build target of the
+ * same name. Builds can be tagged and untagged at runtime, these changes only show in getLastEvent and queryHistory,
+ * listTagged and getLatestBuilds keep listing the generated builds.
+ *
+ * Latency, XML-RPC faults and HTTP errors can be injected, and maven build tasks close after a configurable time, so
+ * the hub can stand in for a slow or failing one in concurrency and soak tests of KojiClient and KojiBuilder.
+ *
+ * Usage: FakeKojiHub [port] [packages] [buildsPerPackage] [latencyMillis]
+ */
+public class FakeKojiHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeKojiHub.class);
+
+    static final int FAULT_GENERIC = 1000;
+    static final int FAULT_AUTH_ERROR = 1002;
+    static final int FAULT_AUTH_EXPIRED = 1007;
+
+    public static final String DEFAULT_TAG = "mead-import-maven-all";
+
+    private static final Pattern NVR = Pattern.compile("(package-\\d+)-1\\.0\\.(\\d+)-1");
+    private static final Pattern PACKAGE = Pattern.compile("package-(\\d+)");
+    /**
+     * Creation time of the first build, in seconds as reported by Koji.
+     */
+    private static final double FIRST_BUILD_TS = 1400000000.0;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random();
+    private final XmlRpcClientConfigImpl parserConfig = new XmlRpcClientConfigImpl();
+    private final MyTypeFactory typeFactory = new MyTypeFactory(new XmlRpcClient());
+
+    private volatile List<String> tags = Collections.singletonList(DEFAULT_TAG);
+    private volatile int packages = 100;
+    private volatile int buildsPerPackage = 10;
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double faultRate;
+    private volatile double httpErrorRate;
+    private volatile long taskDurationMillis = 10 * 1000;
+
+    /**
+     * Accepted user names and passwords, any login is accepted while empty.
+     */
+    private final Map<String, String> users = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<Integer, Session> sessions = new ConcurrentHashMap<Integer, Session>();
+    private final ConcurrentMap<Integer, Task> tasks = new ConcurrentHashMap<Integer, Task>();
+    private final AtomicInteger lastSessionId = new AtomicInteger();
+    private final AtomicInteger lastTaskId = new AtomicInteger(1000);
+    /**
+     * tag_listing history rows of builds tagged and untagged at runtime, guarded by itself.
+     */
+    private final List<Map<String, Object>> tagHistory = new ArrayList<Map<String, Object>>();
+    /**
+     * Event of the last runtime tag change, 0 if there was none.
+     */
+    private volatile int lastChangeEvent;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong faults = new AtomicLong();
+    private final AtomicLong httpErrors = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Creates a hub listening on the loopback interface, not started yet.
+     * @param port Port to listen on, 0 for any free port.
+     */
+    public FakeKojiHub(int port) throws IOException {
+        parserConfig.setEnabledForExtensions(true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 200);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Fake Koji hub " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/kojihub", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                FakeKojiHub.this.handle(exchange);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        FakeKojiHub hub = new FakeKojiHub(port);
+        if (args.length > 2) {
+            hub.setDataset(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            long latency = Long.parseLong(args[3]);
+            hub.setLatency(latency, latency);
+        }
+        hub.start();
+        System.out.println("Fake Koji hub running at " + hub.getURL() + ", tag " + DEFAULT_TAG + " with "
+                + hub.packages + " packages of " + hub.buildsPerPackage + " builds");
+    }
+
+    public FakeKojiHub start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return XML-RPC URL to point KojiClient to.
+     */
+    public String getURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/kojihub";
+    }
+
+    /**
+     * Sets the size of every tag.
+     * @param packages Number of packages.
+     * @param buildsPerPackage Number of builds of every package.
+     */
+    public FakeKojiHub setDataset(int packages, int buildsPerPackage) {
+        this.packages = packages;
+        this.buildsPerPackage = buildsPerPackage;
+        return this;
+    }
+
+    /**
+     * Sets names of the tags, all holding the same builds.
+     */
+    public FakeKojiHub setTags(String... tags) {
+        this.tags = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(tags)));
+        return this;
+    }
+
+    /**
+     * Delays every request by a random time between min and max.
+     */
+    public FakeKojiHub setLatency(long minMillis, long maxMillis) {
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * @param faultRate Share of calls, including calls within multiCall, answered with a generic XML-RPC fault.
+     */
+    public FakeKojiHub setFaultRate(double faultRate) {
+        this.faultRate = faultRate;
+        return this;
+    }
+
+    /**
+     * @param httpErrorRate Share of requests answered with HTTP 503, as by an overloaded hub or proxy.
+     */
+    public FakeKojiHub setHttpErrorRate(double httpErrorRate) {
+        this.httpErrorRate = httpErrorRate;
+        return this;
+    }
+
+    /**
+     * @param taskDurationMillis How long maven build tasks take to close.
+     */
+    public FakeKojiHub setTaskDuration(long taskDurationMillis) {
+        this.taskDurationMillis = taskDurationMillis;
+        return this;
+    }
+
+    /**
+     * Restricts login to known users. Any login is accepted until the first user is added.
+     */
+    public FakeKojiHub addUser(String userName, String password) {
+        users.put(userName, password);
+        return this;
+    }
+
+    /**
+     * Tags a build at a new event.
+     * @param buildId Build id, from 1.
+     * @return Event of the change.
+     */
+    public int tagBuild(String tag, int buildId) {
+        synchronized (tagHistory) {
+            int event = getLastEvent() + 1;
+            tagHistory.add(historyRow(tag, buildId, event));
+            lastChangeEvent = event;
+            return event;
+        }
+    }
+
+    /**
+     * Untags a build at a new event, either one tagged by tagBuild or one of the generated builds.
+     * @param buildId Build id, from 1.
+     * @return Event of the change.
+     */
+    public int untagBuild(String tag, int buildId) {
+        synchronized (tagHistory) {
+            int event = getLastEvent() + 1;
+            Map<String, Object> active = null;
+            for (Map<String, Object> row : tagHistory) {
+                if (row.get("tag.name").equals(tag) && row.get("build_id").equals(buildId) && row.get("revoke_event") == null) {
+                    active = row;
+                }
+            }
+            if (active == null) {
+                // generated builds are tagged by the event creating them
+                active = historyRow(tag, buildId, 10000 + buildId);
+                tagHistory.add(active);
+            }
+            active.put("revoke_event", event);
+            active.put("active", null);
+            lastChangeEvent = event;
+            return event;
+        }
+    }
+
+    /**
+     * Expires all sessions, calls made with them fail with AuthExpired until the client logs in again.
+     */
+    public void expireSessions() {
+        for (Session session : sessions.values()) {
+            session.expired = true;
+        }
+    }
+
+    /**
+     * @return NVR of a build, e.g. for getBuild.
+     * @param packageIndex Package number, from 0.
+     * @param build Build number within the package, from 0.
+     */
+    public String getNvr(int packageIndex, int build) {
+        return packageName(packageIndex) + "-1.0." + build + "-1";
+    }
+
+    public static String packageName(int packageIndex) {
+        return String.format("package-%05d", packageIndex);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFaults() {
+        return faults.get();
+    }
+
+    public long getHttpErrors() {
+        return httpErrors.get();
+    }
+
+    /**
+     * @return Number of calls of a method received, including calls within multiCall.
+     */
+    public long getCalls(String methodName) {
+        AtomicLong count = calls.get(methodName);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            XmlRpcRequestParser request;
+            try {
+                InputStream body = exchange.getRequestBody();
+                if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    body = new GZIPInputStream(body);
+                }
+                request = parse(body);
+            } catch (SAXException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            delay();
+            if (httpErrorRate > 0 && random.nextDouble() < httpErrorRate) {
+                httpErrors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            Object result;
+            try {
+                Session session = session(exchange.getRequestURI().getRawQuery());
+                result = call(session, request.getMethodName(), request.getParams());
+            } catch (Fault fault) {
+                faults.incrementAndGet();
+                writeResponse(exchange, fault);
+                return;
+            }
+            writeResponse(exchange, result);
+        } catch (RuntimeException e) {
+            logger.warn("Fake Koji hub failed to answer a request", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private XmlRpcRequestParser parse(InputStream in) throws IOException, SAXException {
+        try {
+            XmlRpcRequestParser parser = new XmlRpcRequestParser(parserConfig, typeFactory);
+            XMLReader reader = SAXParsers.newXMLReader();
+            reader.setContentHandler(parser);
+            reader.parse(new InputSource(in));
+            return parser;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void delay() {
+        long latency = minLatencyMillis;
+        if (maxLatencyMillis > minLatencyMillis) {
+            latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Resolves the session passed as session-id and session-key URL parameters.
+     * @return Session or null if the request is anonymous.
+     */
+    private Session session(String query) throws Fault {
+        if (query == null) {
+            return null;
+        }
+        String sessionId = null;
+        String sessionKey = null;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("session-id=")) {
+                sessionId = parameter.substring("session-id=".length());
+            } else if (parameter.startsWith("session-key=")) {
+                sessionKey = parameter.substring("session-key=".length());
+            }
+        }
+        if (sessionId == null) {
+            return null;
+        }
+
+        Session session;
+        try {
+            session = sessions.get(Integer.valueOf(sessionId));
+        } catch (NumberFormatException e) {
+            session = null;
+        }
+        if (session == null || !session.key.equals(sessionKey)) {
+            throw new Fault(FAULT_AUTH_ERROR, "Invalid session or session key");
+        }
+        if (session.expired) {
+            throw new Fault(FAULT_AUTH_EXPIRED, "session " + sessionId + " is expired");
+        }
+        return session;
+    }
+
+    private Object call(Session session, String methodName, List<?> params) throws Fault {
+        AtomicLong count = calls.get(methodName);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = calls.putIfAbsent(methodName, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+
+        if (faultRate > 0 && random.nextDouble() < faultRate) {
+            throw new Fault(FAULT_GENERIC, "Injected fault in " + methodName);
+        }
+        try {
+            return dispatch(session, methodName, params);
+        } catch (RuntimeException e) {
+            // e.g. parameters of unexpected types
+            throw new Fault(FAULT_GENERIC, e.toString());
+        }
+    }
+
+    private Object dispatch(Session session, String methodName, List<?> params) throws Fault {
+        if ("hello".equals(methodName)) {
+            return "Hello World!";
+        } else if ("login".equals(methodName)) {
+            return login((String) param(params, 0), (String) param(params, 1));
+        } else if ("logout".equals(methodName)) {
+            if (session != null) {
+                sessions.remove(session.id);
+            }
+            return null;
+        } else if ("showSession".equals(methodName)) {
+            return session == null ? "" : "session-id=" + session.id + ", user=" + session.user;
+        } else if ("getLoggedInUser".equals(methodName)) {
+            return session == null ? null : user(session);
+        } else if ("getBuild".equals(methodName)) {
+            int id = buildId(param(params, 0));
+            return id > 0 ? build(id, null) : null;
+        } else if ("getLatestBuilds".equals(methodName)) {
+            return getLatestBuilds(checkTag(param(params, 0)), (String) param(params, 2));
+        } else if ("listTagged".equals(methodName)) {
+            return listTagged(checkTag(param(params, 0)), (String) param(params, 3), Boolean.TRUE.equals(param(params, 4)),
+                    (String) param(params, 5), (String) param(params, 6));
+        } else if ("listArchives".equals(methodName)) {
+            return new Object[0];
+        } else if ("listTags".equals(methodName) || "getBuildTargets".equals(methodName)) {
+            List<String> tagNames = tags;
+            Object[] result = new Object[tagNames.size()];
+            for (int i = 0; i < result.length; i++) {
+                Map<String, Object> tag = new HashMap<String, Object>();
+                tag.put("id", i + 1);
+                tag.put("name", tagNames.get(i));
+                result[i] = tag;
+            }
+            return result;
+        } else if ("listPackages".equals(methodName)) {
+            Object[] result = new Object[packages];
+            for (int i = 0; i < result.length; i++) {
+                Map<String, Object> pkg = new HashMap<String, Object>();
+                pkg.put("package_id", i + 1);
+                pkg.put("package_name", packageName(i));
+                result[i] = pkg;
+            }
+            return result;
+        } else if ("getLastEvent".equals(methodName)) {
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("id", getLastEvent());
+            event.put("ts", FIRST_BUILD_TS + getLastEvent() * 60.0);
+            return event;
+        } else if ("queryHistory".equals(methodName)) {
+            Map<String, ?> kwargs = (Map<String, ?>) param(params, 1);
+            Map<String, Object> history = new HashMap<String, Object>();
+            history.put("tag_listing", queryTagHistory((String) kwargs.get("tag"), ((Number) kwargs.get("afterEvent")).intValue()));
+            return history;
+        } else if ("mavenBuild".equals(methodName)) {
+            if (session == null) {
+                throw new Fault(FAULT_AUTH_ERROR, "Not logged in");
+            }
+            Task task = new Task(lastTaskId.incrementAndGet(), session, System.currentTimeMillis());
+            tasks.put(task.id, task);
+            return task.id;
+        } else if ("getTaskInfo".equals(methodName)) {
+            Task task = tasks.get(((Number) param(params, 0)).intValue());
+            return task == null ? null : taskInfo(task);
+        } else if ("multiCall".equals(methodName) || "system.multicall".equals(methodName)) {
+            return multiCall(session, (Object[]) param(params, 0));
+        }
+
+        throw new Fault(FAULT_GENERIC, "Invalid method: " + methodName);
+    }
+
+    private static Object param(List<?> params, int index) {
+        return index < params.size() ? params.get(index) : null;
+    }
+
+    /**
+     * Successful calls are answered as one element arrays, failed ones as fault structs.
+     */
+    private Object[] multiCall(Session session, Object[] batch) {
+        Object[] results = new Object[batch == null ? 0 : batch.length];
+        for (int i = 0; i < results.length; i++) {
+            Map<String, ?> call = (Map<String, ?>) batch[i];
+            Object[] params = (Object[]) call.get("params");
+            try {
+                Object result = call(session, (String) call.get("methodName"),
+                        params == null ? Collections.emptyList() : Arrays.asList(params));
+                results[i] = new Object[] {result};
+            } catch (Fault fault) {
+                faults.incrementAndGet();
+                results[i] = fault.toStruct();
+            }
+        }
+        return results;
+    }
+
+    private Map<String, Object> login(String userName, String password) throws Fault {
+        if (userName == null || (!users.isEmpty() && (password == null || !password.equals(users.get(userName))))) {
+            throw new Fault(FAULT_AUTH_ERROR, "Invalid username or password");
+        }
+
+        Session session = new Session(lastSessionId.incrementAndGet(), Long.toHexString(random.nextLong()), userName);
+        sessions.put(session.id, session);
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("session-id", session.id);
+        result.put("session-key", session.key);
+        return result;
+    }
+
+    private static Map<String, Object> user(Session session) {
+        Map<String, Object> user = new HashMap<String, Object>();
+        user.put("id", session.id);
+        user.put("name", session.user);
+        user.put("status", 0);
+        user.put("usertype", 0);
+        user.put("krb_principal", null);
+        return user;
+    }
+
+    private int getLastEvent() {
+        return Math.max(10000 + packages * buildsPerPackage, lastChangeEvent);
+    }
+
+    /**
+     * History rows of a tag created or revoked after an event, listed newest change first so clients cannot rely on
+     * the order.
+     */
+    private List<Map<String, Object>> queryTagHistory(String tag, int afterEvent) {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        synchronized (tagHistory) {
+            for (Map<String, Object> row : tagHistory) {
+                Integer revoked = (Integer) row.get("revoke_event");
+                if (row.get("tag.name").equals(tag)
+                        && ((Integer) row.get("create_event") > afterEvent || (revoked != null && revoked > afterEvent))) {
+                    rows.add(new LinkedHashMap<String, Object>(row));
+                }
+            }
+        }
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    /**
+     * Generates a tag_listing history row, with build fields joined as by queryHistory.
+     */
+    private Map<String, Object> historyRow(String tag, int buildId, int createEvent) {
+        Map<String, Object> build = build(buildId, null);
+        Map<String, Object> row = new LinkedHashMap<String, Object>();
+        row.put("build_id", buildId);
+        row.put("tag_id", tags.indexOf(tag) + 1);
+        row.put("create_event", createEvent);
+        row.put("revoke_event", null);
+        row.put("active", true);
+        row.put("tag.name", tag);
+        row.put("package.name", build.get("package_name"));
+        row.put("build.version", build.get("version"));
+        row.put("build.release", build.get("release"));
+        row.put("build.epoch", build.get("epoch"));
+        row.put("build.state", build.get("state"));
+        return row;
+    }
+
+    private String checkTag(Object tag) throws Fault {
+        if (!tags.contains(tag)) {
+            throw new Fault(FAULT_GENERIC, "Invalid tagInfo: '" + tag + "'");
+        }
+        return (String) tag;
+    }
+
+    private int packageIndex(String pkg) {
+        Matcher matcher = pkg == null ? null : PACKAGE.matcher(pkg);
+        if (matcher == null || !matcher.matches()) {
+            return -1;
+        }
+        int index = Integer.parseInt(matcher.group(1));
+        return index < packages ? index : -1;
+    }
+
+    /**
+     * Resolves getBuild argument, numeric id or NVR.
+     * @return Build id or 0 if there is no such build.
+     */
+    private int buildId(Object buildInfo) {
+        int id = 0;
+        if (buildInfo instanceof Number) {
+            id = ((Number) buildInfo).intValue();
+        } else if (buildInfo instanceof String) {
+            String nvr = (String) buildInfo;
+            Matcher matcher = NVR.matcher(nvr);
+            if (matcher.matches()) {
+                int packageIndex = packageIndex(matcher.group(1));
+                int build = Integer.parseInt(matcher.group(2));
+                if (packageIndex >= 0 && build < buildsPerPackage) {
+                    id = packageIndex * buildsPerPackage + build + 1;
+                }
+            } else if (nvr.matches("\\d+")) {
+                id = Integer.parseInt(nvr);
+            }
+        }
+        return id > 0 && id <= packages * buildsPerPackage ? id : 0;
+    }
+
+    private Object getLatestBuilds(String tag, String pkg) {
+        if (pkg == null) {
+            return new Builds(tag, 0, packages, true, null, null);
+        }
+        int packageIndex = packageIndex(pkg);
+        if (packageIndex < 0) {
+            return new Object[0];
+        }
+        return new Object[] {build((packageIndex + 1) * buildsPerPackage, tag)};
+    }
+
+    private Object listTagged(String tag, String prefix, boolean latest, String pkg, String owner) {
+        if (pkg != null) {
+            int packageIndex = packageIndex(pkg);
+            if (packageIndex < 0) {
+                return new Object[0];
+            }
+            return new Builds(tag, packageIndex, packageIndex + 1, latest, prefix, owner);
+        }
+        return new Builds(tag, 0, packages, latest, prefix, owner);
+    }
+
+    /**
+     * Generates a build struct.
+     * @param id Build id, from 1.
+     * @param tag Tag the build is listed in, null for getBuild.
+     */
+    private Map<String, Object> build(int id, String tag) {
+        int packageIndex = (id - 1) / buildsPerPackage;
+        int build = (id - 1) % buildsPerPackage;
+        String name = packageName(packageIndex);
+        String version = "1.0." + build;
+        double created = FIRST_BUILD_TS + id * 60.0;
+
+        Map<String, Object> struct = new LinkedHashMap<String, Object>();
+        struct.put("id", id);
+        struct.put("package_id", packageIndex + 1);
+        struct.put("package_name", name);
+        struct.put("name", name);
+        struct.put("version", version);
+        struct.put("release", "1");
+        struct.put("epoch", null);
+        struct.put("nvr", name + "-" + version + "-1");
+        struct.put("state", 1);
+        struct.put("task_id", 500000 + id);
+        struct.put("owner_id", id % 10 + 1);
+        struct.put("owner_name", owner(id));
+        struct.put("volume_id", 0);
+        struct.put("volume_name", "DEFAULT");
+        struct.put("creation_event_id", 10000 + id);
+        struct.put("creation_ts", created);
+        struct.put("completion_ts", created + 300.0);
+        struct.put("maven_group_id", "org.example.fake");
+        struct.put("maven_artifact_id", name);
+        struct.put("maven_version", version);
+        if (tag != null) {
+            struct.put("build_id", id);
+            struct.put("tag_id", tags.indexOf(tag) + 1);
+            struct.put("tag_name", tag);
+            struct.put("create_event", 10000 + id);
+        }
+        return struct;
+    }
+
+    private static String owner(int id) {
+        return "builder" + (id % 10 + 1);
+    }
+
+    private Map<String, Object> taskInfo(Task task) {
+        long elapsed = System.currentTimeMillis() - task.created;
+        KojiTask.TaskState state;
+        if (elapsed >= taskDurationMillis) {
+            state = KojiTask.TaskState.CLOSED;
+        } else if (elapsed >= taskDurationMillis / 10) {
+            state = KojiTask.TaskState.OPEN;
+        } else {
+            state = KojiTask.TaskState.FREE;
+        }
+
+        Map<String, Object> info = new HashMap<String, Object>();
+        info.put("id", task.id);
+        info.put("method", "maven");
+        info.put("state", state.ordinal());
+        info.put("parent", null);
+        info.put("owner", task.owner);
+        info.put("host_id", state == KojiTask.TaskState.FREE ? null : 1);
+        info.put("channel_id", 1);
+        info.put("priority", 20);
+        info.put("arch", "noarch");
+        info.put("label", null);
+        info.put("create_ts", task.created / 1000.0);
+        info.put("start_ts", state == KojiTask.TaskState.FREE ? null : (task.created + taskDurationMillis / 10) / 1000.0);
+        info.put("completion_ts", state == KojiTask.TaskState.CLOSED ? (task.created + taskDurationMillis) / 1000.0 : null);
+        return info;
+    }
+
+    private void writeResponse(HttpExchange exchange, Object result) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        // chunked, so huge listTagged responses are never held in memory
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+        Writer out = new BufferedWriter(new OutputStreamWriter(body, "UTF-8"), 64 * 1024);
+        try {
+            out.write("<?xml version='1.0'?>\n<methodResponse>\n");
+            if (result instanceof Fault) {
+                out.write("<fault>\n");
+                writeValue(out, ((Fault) result).toStruct());
+                out.write("\n</fault>\n");
+            } else {
+                out.write("<params>\n<param>\n");
+                writeValue(out, result);
+                out.write("\n</param>\n</params>\n");
+            }
+            out.write("</methodResponse>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeValue(Writer out, Object value) throws IOException {
+        out.write("<value>");
+        if (value == null) {
+            out.write("<nil/>");
+        } else if (value instanceof String) {
+            out.write("<string>");
+            writeEscaped(out, (String) value);
+            out.write("</string>");
+        } else if (value instanceof Integer) {
+            out.write("<int>" + value + "</int>");
+        } else if (value instanceof Boolean) {
+            out.write(((Boolean) value) ? "<boolean>1</boolean>" : "<boolean>0</boolean>");
+        } else if (value instanceof Number) {
+            out.write("<double>" + ((Number) value).doubleValue() + "</double>");
+        } else if (value instanceof Map) {
+            out.write("<struct>");
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                out.write("<member><name>");
+                writeEscaped(out, String.valueOf(member.getKey()));
+                out.write("</name>");
+                writeValue(out, member.getValue());
+                out.write("</member>");
+            }
+            out.write("</struct>");
+        } else if (value instanceof Object[] || value instanceof Iterable) {
+            Iterable<?> elements = value instanceof Object[] ? Arrays.asList((Object[]) value) : (Iterable<?>) value;
+            out.write("<array><data>\n");
+            for (Object element : elements) {
+                writeValue(out, element);
+                out.write('\n');
+            }
+            out.write("</data></array>");
+        } else {
+            throw new IllegalArgumentException("Cannot serialize " + value.getClass());
+        }
+        out.write("</value>");
+    }
+
+    private static void writeEscaped(Writer out, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '<') {
+                out.write("&lt;");
+            } else if (c == '>') {
+                out.write("&gt;");
+            } else if (c == '&') {
+                out.write("&amp;");
+            } else {
+                out.write(c);
+            }
+        }
+    }
+
+    /**
+     * Builds of a range of packages as listed in a tag, generated while the response is written.
+     */
+    private class Builds implements Iterable<Map<String, Object>> {
+        private final String tag;
+        private final int fromPackage;
+        private final int toPackage;
+        private final boolean latest;
+        private final String prefix;
+        private final String owner;
+
+        Builds(String tag, int fromPackage, int toPackage, boolean latest, String prefix, String owner) {
+            this.tag = tag;
+            this.fromPackage = fromPackage;
+            this.toPackage = toPackage;
+            this.latest = latest;
+            this.prefix = prefix;
+            this.owner = owner;
+        }
+
+        public Iterator<Map<String, Object>> iterator() {
+            final int perPackage = buildsPerPackage;
+            return new Iterator<Map<String, Object>>() {
+                // newest builds first, as listed by Koji
+                private int packageIndex = fromPackage;
+                private int build = perPackage - 1;
+                private Map<String, Object> next = advance();
+
+                private Map<String, Object> advance() {
+                    while (packageIndex < toPackage) {
+                        if (prefix != null && !packageName(packageIndex).startsWith(prefix)) {
+                            packageIndex++;
+                            continue;
+                        }
+                        int id = packageIndex * perPackage + build + 1;
+                        if (latest || --build < 0) {
+                            packageIndex++;
+                            build = perPackage - 1;
+                        }
+                        if (owner == null || owner.equals(owner(id))) {
+                            return build(id, tag);
+                        }
+                    }
+                    return null;
+                }
+
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                public Map<String, Object> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Map<String, Object> current = next;
+                    next = advance();
+                    return current;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private static class Session {
+        private final int id;
+        private final String key;
+        private final String user;
+        private volatile boolean expired;
+
+        Session(int id, String key, String user) {
+            this.id = id;
+            this.key = key;
+            this.user = user;
+        }
+    }
+
+    private static class Task {
+        private final int id;
+        private final int owner;
+        private final long created;
+
+        Task(int id, Session session, long created) {
+            this.id = id;
+            this.owner = session.id;
+            this.created = created;
+        }
+    }
+
+    /**
+     * XML-RPC fault answered instead of a result.
+     */
+    private static class Fault extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        Fault(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+
+        Map<String, Object> toStruct() {
+            Map<String, Object> struct = new HashMap<String, Object>();
+            struct.put("faultCode", code);
+            struct.put("faultString", getMessage());
+            return struct;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class KojiBuildCacheTest {
+
+    private static final String HUB = "http://koji.example.com/kojihub";
+    private static final String TAG = "mead-import-maven-all";
+
+    private final KojiBuildCache cache = new KojiBuildCache();
+
+    @Test
+    public void cachesCompletedBuildsByIdAndNvr() {
+        KojiBuild build = build(1, "pkg", KojiBuild.BuildState.COMPLETE);
+        cache.putBuild(HUB, build);
+
+        assertSame(build, cache.getBuild(HUB, "1"));
+        assertSame(build, cache.getBuild(HUB, "pkg-1.0-1"));
+        assertNull(cache.getBuild("http://other.example.com/kojihub", "1"));
+        assertEquals(2, cache.getBuildHits());
+        assertEquals(1, cache.getBuildMisses());
+    }
+
+    @Test
+    public void ignoresBuildsNotCompleted() {
+        cache.putBuild(HUB, build(1, "pkg", KojiBuild.BuildState.BUILDING));
+
+        assertNull(cache.getBuild(HUB, "1"));
+        assertEquals(0, cache.getBuildCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBuilds() {
+        cache.setMaxBuilds(2);
+        cache.putBuild(HUB, build(1, "a", KojiBuild.BuildState.COMPLETE));
+        cache.putBuild(HUB, build(2, "b", KojiBuild.BuildState.COMPLETE));
+        // a lookup by NVR counts as use of the build
+        cache.getBuild(HUB, "a-1.0-1");
+        cache.putBuild(HUB, build(3, "c", KojiBuild.BuildState.COMPLETE));
+
+        assertEquals(2, cache.getBuildCount());
+        assertNotNull(cache.getBuild(HUB, "1"));
+        assertNull(cache.getBuild(HUB, "2"));
+        assertNull(cache.getBuild(HUB, "b-1.0-1"));
+        assertNotNull(cache.getBuild(HUB, "c-1.0-1"));
+    }
+
+    @Test
+    public void expiresLatestBuilds() throws InterruptedException {
+        KojiBuild build = build(1, "pkg", KojiBuild.BuildState.COMPLETE);
+        cache.setLatestTtlMillis(50);
+        cache.putLatestBuild(HUB, TAG, "pkg", build);
+
+        assertSame(build, cache.getLatestBuild(HUB, TAG, "pkg"));
+        Thread.sleep(100);
+        assertNull(cache.getLatestBuild(HUB, TAG, "pkg"));
+        assertEquals(1, cache.getLatestHits());
+        assertEquals(1, cache.getLatestMisses());
+        // the build itself stays cached
+        assertSame(build, cache.getBuild(HUB, "1"));
+    }
+
+    @Test
+    public void disabledTtlDoesNotCacheLatestBuilds() {
+        cache.setLatestTtlMillis(0);
+        cache.putLatestBuild(HUB, TAG, "pkg", build(1, "pkg", KojiBuild.BuildState.COMPLETE));
+
+        assertNull(cache.getLatestBuild(HUB, TAG, "pkg"));
+    }
+
+    @Test
+    public void invalidatesLatestBuildsOfTagCachedBeforeEvent() {
+        cache.noteEvent(HUB, 10);
+        cache.putLatestBuild(HUB, TAG, "a", build(1, "a", KojiBuild.BuildState.COMPLETE));
+        cache.putLatestBuild(HUB, "other-tag", "a", build(1, "a", KojiBuild.BuildState.COMPLETE));
+        cache.noteEvent(HUB, 20);
+        cache.putLatestBuild(HUB, TAG, "b", build(2, "b", KojiBuild.BuildState.COMPLETE));
+
+        cache.invalidateTag(HUB, TAG, 15);
+
+        assertNull(cache.getLatestBuild(HUB, TAG, "a"));
+        assertNotNull(cache.getLatestBuild(HUB, "other-tag", "a"));
+        assertNotNull(cache.getLatestBuild(HUB, TAG, "b"));
+    }
+
+    static KojiBuild build(int id, String name, KojiBuild.BuildState state) {
+        Map<String, Object> struct = new HashMap<String, Object>();
+        struct.put("id", id);
+        struct.put("name", name);
+        struct.put("version", "1.0");
+        struct.put("release", "1");
+        struct.put("state", state.ordinal());
+        struct.put("volume_name", "DEFAULT");
+        return KojiBuild.fromStruct(struct);
+    }
+}
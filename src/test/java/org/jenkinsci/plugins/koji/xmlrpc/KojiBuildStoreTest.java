@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class KojiBuildStoreTest {
+
+    private static final String HUB = "http://koji.example.com/kojihub";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWrittenBuildsByIdAndNvr() throws Exception {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        store.put(HUB, KojiBuildCacheTest.build(1, "pkg", KojiBuild.BuildState.COMPLETE));
+
+        KojiBuild build = store.get(HUB, "pkg-1.0-1");
+        assertNotNull(build);
+        assertEquals(1, build.getId());
+        assertEquals("DEFAULT", build.getVolumeName());
+        assertEquals(KojiBuild.BuildState.COMPLETE, store.get(HUB, "1").getState());
+        assertNull(store.get("http://other.example.com/kojihub", "1"));
+        store.close();
+    }
+
+    @Test
+    public void skipsBuildsNotCompleted() {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        store.put(HUB, KojiBuildCacheTest.build(1, "pkg", KojiBuild.BuildState.FAILED));
+
+        assertNull(store.get(HUB, "1"));
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    @Test
+    public void indexesExistingSegmentsOnReopen() {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        for (int id = 1; id <= 100; id++) {
+            store.put(HUB, KojiBuildCacheTest.build(id, "pkg" + id, KojiBuild.BuildState.COMPLETE));
+        }
+        store.close();
+
+        KojiBuildStore reopened = new KojiBuildStore(folder.getRoot());
+        assertEquals("pkg50", reopened.get(HUB, "50").getName());
+        assertEquals(100, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void indexesLargeSegmentOnReopen() {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        for (int id = 1; id <= 20000; id++) {
+            store.put(HUB, KojiBuildCacheTest.build(id, "pkg" + id, KojiBuild.BuildState.COMPLETE));
+        }
+        assertEquals(1, store.getSegmentCount());
+        store.close();
+
+        KojiBuildStore reopened = new KojiBuildStore(folder.getRoot());
+        assertEquals(20000, reopened.size());
+        assertEquals("pkg1", reopened.get(HUB, "1").getName());
+        assertEquals("pkg20000", reopened.get(HUB, "pkg20000-1.0-1").getName());
+        reopened.close();
+    }
+
+    @Test
+    public void cutsOffIncompleteRecord() throws Exception {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        store.put(HUB, KojiBuildCacheTest.build(1, "a", KojiBuild.BuildState.COMPLETE));
+        store.put(HUB, KojiBuildCacheTest.build(2, "b", KojiBuild.BuildState.COMPLETE));
+        store.close();
+
+        File segment = new File(folder.getRoot(), "builds-00001.log");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        KojiBuildStore reopened = new KojiBuildStore(folder.getRoot());
+        assertNotNull(reopened.get(HUB, "1"));
+        assertNull(reopened.get(HUB, "2"));
+        // appends after the cut off record are readable again
+        reopened.put(HUB, KojiBuildCacheTest.build(3, "c", KojiBuild.BuildState.COMPLETE));
+        reopened.close();
+        assertNotNull(new KojiBuildStore(folder.getRoot()).get(HUB, "3"));
+    }
+
+    @Test
+    public void deletesOldestSegmentsBeyondLimit() {
+        // roughly one record per segment
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot(), 10, 3);
+        for (int id = 1; id <= 5; id++) {
+            store.put(HUB, KojiBuildCacheTest.build(id, "pkg" + id, KojiBuild.BuildState.COMPLETE));
+        }
+
+        assertEquals(3, store.getSegmentCount());
+        assertEquals(3, folder.getRoot().list().length);
+        assertNull(store.get(HUB, "1"));
+        assertNull(store.get(HUB, "pkg2-1.0-1"));
+        assertNotNull(store.get(HUB, "3"));
+        assertNotNull(store.get(HUB, "pkg5-1.0-1"));
+        store.close();
+    }
+
+    @Test
+    public void cachePersistsOnlyGetBuildResults() {
+        KojiBuildStore store = new KojiBuildStore(folder.getRoot());
+        KojiBuildCache cache = new KojiBuildCache();
+        cache.setStore(store);
+
+        cache.putLatestBuild(HUB, "some-tag", "a", KojiBuildCacheTest.build(1, "a", KojiBuild.BuildState.COMPLETE));
+        cache.putBuild(HUB, KojiBuildCacheTest.build(2, "b", KojiBuild.BuildState.COMPLETE));
+
+        assertNull(store.get(HUB, "1"));
+        assertNotNull(store.get(HUB, "2"));
+        cache.setStore(null);
+    }
+}
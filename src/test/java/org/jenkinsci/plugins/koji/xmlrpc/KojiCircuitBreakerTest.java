@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KojiCircuitBreakerTest {
+
+    private KojiCircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        breaker = new KojiCircuitBreaker("http://koji.example.com/kojihub");
+        breaker.setFailureThreshold(3);
+        breaker.setOpenMillis(50);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws XmlRpcException {
+        failCalls(2);
+        breaker.acquire();
+        breaker.recordSuccess();
+        failCalls(2);
+        assertEquals(KojiCircuitBreaker.State.CLOSED, breaker.getState());
+
+        failCalls(1);
+        assertEquals(KojiCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpened());
+        assertRejected();
+        assertEquals(1, breaker.getRejected());
+    }
+
+    @Test
+    public void successfulTrialClosesCircuit() throws Exception {
+        open();
+
+        assertTrue(breaker.acquire());
+        assertEquals(KojiCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one trial at a time
+        assertRejected();
+        breaker.recordSuccess();
+        breaker.endTrial();
+
+        assertEquals(KojiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.acquire());
+    }
+
+    @Test
+    public void failedTrialOpensCircuitAgain() throws Exception {
+        open();
+
+        assertTrue(breaker.acquire());
+        breaker.recordFailure();
+        breaker.endTrial();
+
+        assertEquals(KojiCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpened());
+        assertRejected();
+    }
+
+    @Test
+    public void trialWithoutOutcomeLetsNextCallTry() throws Exception {
+        open();
+
+        // e.g. timed out waiting for a pooled connection
+        assertTrue(breaker.acquire());
+        breaker.endTrial();
+
+        assertEquals(KojiCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.acquire());
+    }
+
+    @Test
+    public void interruptedBorrowRecordsNoOutcome() throws Exception {
+        FakeKojiHub hub = new FakeKojiHub(0).start();
+        try {
+            KojiClient koji = KojiClient.getKojiClient(hub.getURL());
+            Thread.currentThread().interrupt();
+            try {
+                koji.getLastEvent();
+                fail("interrupted borrow expected");
+            } catch (XmlRpcException e) {
+                assertTrue(Thread.interrupted());
+            }
+
+            KojiCircuitBreaker circuitBreaker = KojiClientPool.forHub(hub.getURL()).getCircuitBreaker();
+            assertEquals(0, circuitBreaker.getFailures());
+            assertEquals(0, hub.getRequests());
+        } finally {
+            KojiClientPool.remove(hub.getURL());
+            hub.stop();
+        }
+    }
+
+    private void failCalls(int failures) throws XmlRpcException {
+        for (int i = 0; i < failures; i++) {
+            breaker.acquire();
+            breaker.recordFailure();
+        }
+    }
+
+    private void open() throws Exception {
+        failCalls(3);
+        Thread.sleep(100);
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.acquire();
+            fail("open circuit expected");
+        } catch (XmlRpcException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmark for KojiClient outside of Jenkins environment. Runs getLatestBuilds calls from an increasing
+ * number of concurrent executors, each with its own KojiClient, and prints calls/sec for every executor count, showing
+ * how the pooled clients scale.
+ *
+ * Without a hub URL, runs against an in-process FakeKojiHub answering with FAKE_HUB_LATENCY_MILLIS latency.
+ *
+ * Usage: KojiClientBenchmark [hubURL] [tag] [package] [secondsPerRound]
+ */
+public class KojiClientBenchmark {
+
+    private static final int[] EXECUTOR_COUNTS = {1, 2, 4, 8, 16, 32, 40};
+    private static final long FAKE_HUB_LATENCY_MILLIS = 20;
+
+    private final String kojiInstanceURL;
+    private final String tag;
+    private final String pkg;
+    private final long roundMillis;
+
+    public KojiClientBenchmark(String kojiInstanceURL, String tag, String pkg, long roundMillis) {
+        this.kojiInstanceURL = kojiInstanceURL;
+        this.tag = tag;
+        this.pkg = pkg;
+        this.roundMillis = roundMillis;
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        FakeKojiHub hub = null;
+        String kojiInstanceURL;
+        if (args.length > 0) {
+            kojiInstanceURL = args[0];
+        } else {
+            hub = new FakeKojiHub(0).setLatency(FAKE_HUB_LATENCY_MILLIS, FAKE_HUB_LATENCY_MILLIS).start();
+            kojiInstanceURL = hub.getURL();
+        }
+        String tag = args.length > 1 ? args[1] : FakeKojiHub.DEFAULT_TAG;
+        String pkg = args.length > 2 ? args[2] : FakeKojiHub.packageName(0);
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        // every call has to reach the hub
+        KojiBuildCache.getInstance().setLatestTtlMillis(0);
+        KojiClientBenchmark benchmark = new KojiClientBenchmark(kojiInstanceURL, tag, pkg, seconds * 1000);
+        System.out.println("executors\tcalls\terrors\tcalls/sec");
+        try {
+            for (int executors : EXECUTOR_COUNTS) {
+                benchmark.runRound(executors);
+            }
+        } finally {
+            if (hub != null) {
+                hub.stop();
+            }
+        }
+    }
+
+    /**
+     * Runs a single measured round with a given number of concurrent executors.
+     * @param executors Number of threads calling Koji.
+     */
+    private void runRound(int executors) throws InterruptedException {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(executors);
+        final long[] deadline = new long[1];
+
+        for (int i = 0; i < executors; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        KojiClient koji = KojiClient.getKojiClient(kojiInstanceURL);
+                        start.await();
+                        while (System.currentTimeMillis() < deadline[0]) {
+                            try {
+                                koji.getLatestBuilds(tag, pkg);
+                                calls.incrementAndGet();
+                            } catch (XmlRpcException e) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (MalformedURLException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "koji-benchmark-" + i);
+            thread.start();
+        }
+
+        long started = System.currentTimeMillis();
+        deadline[0] = started + roundMillis;
+        start.countDown();
+        done.await();
+        long elapsed = System.currentTimeMillis() - started;
+
+        System.out.println(executors + "\t" + calls.get() + "\t" + errors.get() + "\t"
+                + String.format("%.1f", calls.get() * 1000.0 / elapsed));
+    }
+}
@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KojiLatestBuildsTest {
+
+    private static final String TAG_A = "tag-a";
+    private static final String TAG_B = "tag-b";
+
+    private FakeKojiHub hub;
+    private KojiClient koji;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeKojiHub(0).setDataset(20, 2).setTags(TAG_A, TAG_B).start();
+        koji = KojiClient.getKojiClient(hub.getURL());
+    }
+
+    @After
+    public void tearDown() {
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Test
+    public void keepsOrderOfTagsAndPackages() throws Exception {
+        List<String> pkgs = Arrays.asList(FakeKojiHub.packageName(7), FakeKojiHub.packageName(2), "no-such-package",
+                FakeKojiHub.packageName(11), FakeKojiHub.packageName(0));
+        List<KojiLatestBuilds.Result> results = new KojiLatestBuilds(koji, 2).resolve(Arrays.asList(TAG_B, TAG_A), pkgs);
+
+        assertEquals(10, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            KojiLatestBuilds.Result result = results.get(i);
+            assertEquals(i < 5 ? TAG_B : TAG_A, result.getTag());
+            assertEquals(pkgs.get(i % 5), result.getPkg());
+            if (result.getPkg().equals("no-such-package")) {
+                assertNull(result.getBuild());
+            } else {
+                assertEquals(result.getPkg(), result.getBuild().getName());
+            }
+        }
+        // 5 packages in batches of 2, per tag
+        assertEquals(6, hub.getCalls("multiCall"));
+    }
+
+    @Test
+    public void expandsPatternsInNameOrder() throws Exception {
+        List<KojiLatestBuilds.Result> results = new KojiLatestBuilds(koji).resolve(Arrays.asList(TAG_A),
+                Arrays.asList(FakeKojiHub.packageName(15), "package-0000?", "nothing-*"));
+
+        assertEquals(12, results.size());
+        assertEquals(FakeKojiHub.packageName(15), results.get(0).getBuild().getName());
+        for (int i = 0; i < 10; i++) {
+            KojiLatestBuilds.Result result = results.get(i + 1);
+            assertEquals("package-0000?", result.getPkg());
+            assertEquals(FakeKojiHub.packageName(i), result.getBuild().getName());
+        }
+        assertEquals("nothing-*", results.get(11).getPkg());
+        assertNull(results.get(11).getBuild());
+    }
+
+    @Test
+    public void translatesWildcardsOnly() {
+        assertTrue(KojiLatestBuilds.toRegex("org.foo-*").matcher("org.foo-bar").matches());
+        assertFalse(KojiLatestBuilds.toRegex("org.foo-*").matcher("orgxfoo-bar").matches());
+        assertTrue(KojiLatestBuilds.toRegex("a?c").matcher("abc").matches());
+        assertFalse(KojiLatestBuilds.toRegex("a?c").matcher("abbc").matches());
+        assertTrue(KojiLatestBuilds.isPattern("a*"));
+        assertFalse(KojiLatestBuilds.isPattern("a-b"));
+    }
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KojiMultiCallTest {
+
+    private FakeKojiHub hub;
+    private KojiClient koji;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeKojiHub(0).start();
+        koji = KojiClient.getKojiClient(hub.getURL());
+    }
+
+    @After
+    public void tearDown() {
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Test
+    public void sendsQueuedCallsInBatches() throws XmlRpcException {
+        KojiMultiCall multiCall = koji.multiCall(2);
+        List<KojiMultiCall.Result> results = new ArrayList<KojiMultiCall.Result>();
+        for (int id = 1; id <= 5; id++) {
+            results.add(multiCall.add("getBuild", params(id)));
+        }
+        assertEquals(5, multiCall.size());
+
+        multiCall.flush();
+
+        assertEquals(0, multiCall.size());
+        assertEquals(3, hub.getCalls("multiCall"));
+        assertEquals(5, hub.getCalls("getBuild"));
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, ?> build = (Map<String, ?>) results.get(i).get();
+            assertEquals(i + 1, build.get("id"));
+        }
+    }
+
+    @Test
+    public void faultOfOneCallOnlyFailsItsResult() throws XmlRpcException {
+        KojiMultiCall multiCall = koji.multiCall();
+        KojiMultiCall.Result good = multiCall.add("getLatestBuilds",
+                params(FakeKojiHub.DEFAULT_TAG, null, FakeKojiHub.packageName(0)));
+        KojiMultiCall.Result bad = multiCall.add("getLatestBuilds", params("no-such-tag", null, FakeKojiHub.packageName(0)));
+
+        multiCall.flush();
+
+        assertFalse(good.isFault());
+        assertEquals(1, ((Object[]) good.get()).length);
+        assertTrue(bad.isFault());
+        try {
+            bad.get();
+            fail("fault expected");
+        } catch (XmlRpcException e) {
+            assertEquals(FakeKojiHub.FAULT_GENERIC, e.code);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resultIsNotAvailableBeforeFlush() throws XmlRpcException {
+        koji.multiCall().add("getBuild", params(1)).get();
+    }
+
+    @Test
+    public void unwrapsSingleElementArrays() throws XmlRpcException {
+        KojiMultiCall.Result result = new KojiMultiCall.Result();
+        result.complete(new Object[] {"value"});
+
+        assertTrue(result.isDone());
+        assertEquals("value", result.get());
+    }
+
+    @Test
+    public void turnsFaultStructsIntoExceptions() {
+        Map<String, Object> fault = new HashMap<String, Object>();
+        fault.put("faultCode", 1002);
+        fault.put("faultString", "Not logged in");
+        KojiMultiCall.Result result = new KojiMultiCall.Result();
+        result.complete(fault);
+
+        try {
+            result.get();
+            fail("fault expected");
+        } catch (XmlRpcException e) {
+            assertEquals(1002, e.code);
+            assertEquals("Not logged in", e.getMessage());
+        }
+    }
+
+    private static List<Object> params(Object... params) {
+        return new ArrayList<Object>(Arrays.asList(params));
+    }
+}
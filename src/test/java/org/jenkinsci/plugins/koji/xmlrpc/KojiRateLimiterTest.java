@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class KojiRateLimiterTest {
+
+    private final KojiRateLimiter limiter = new KojiRateLimiter();
+
+    @Test
+    public void doesNotWaitWithoutLimit() throws InterruptedException {
+        long started = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+        }
+
+        assertTrue(elapsedMillis(started) < 500);
+    }
+
+    @Test
+    public void allowsBurstUpToRate() throws InterruptedException {
+        limiter.setRate(20);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+        }
+
+        assertTrue(elapsedMillis(started) < 500);
+    }
+
+    @Test
+    public void spacesCallsBeyondBurst() throws InterruptedException {
+        limiter.setRate(20);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+
+        // 10 calls at 20 per second
+        long elapsed = elapsedMillis(started);
+        assertTrue("waited " + elapsed + " ms", elapsed >= 400 && elapsed < 2000);
+    }
+
+    @Test
+    public void removingLimitStopsWaiting() throws InterruptedException {
+        limiter.setRate(1);
+        limiter.acquire();
+        limiter.setRate(0);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+        }
+
+        assertTrue(elapsedMillis(started) < 500);
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
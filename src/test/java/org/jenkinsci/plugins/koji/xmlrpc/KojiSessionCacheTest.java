@@ -0,0 +1,58 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class KojiSessionCacheTest {
+
+    private FakeKojiHub hub;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeKojiHub(0).addUser("builder", "secret").start();
+    }
+
+    @After
+    public void tearDown() {
+        KojiSessionCache.getInstance().clear();
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Test
+    public void reusesSessionOfSameCredentials() throws Exception {
+        KojiSession first = KojiClient.getKojiClient(hub.getURL()).login("builder", "secret");
+        KojiSession second = KojiClient.getKojiClient(hub.getURL()).login("builder", "secret");
+
+        assertEquals(first.getSessionId(), second.getSessionId());
+        assertEquals(1, hub.getCalls("login"));
+    }
+
+    @Test
+    public void doesNotReuseSessionForWrongPassword() throws Exception {
+        KojiClient.getKojiClient(hub.getURL()).login("builder", "secret");
+
+        try {
+            KojiClient.getKojiClient(hub.getURL()).login("builder", "wrong-password");
+            fail("login with wrong password must fail");
+        } catch (XmlRpcException e) {
+            assertEquals(FakeKojiHub.FAULT_AUTH_ERROR, e.code);
+        }
+        assertEquals(2, hub.getCalls("login"));
+    }
+
+    @Test
+    public void identityHidesPassword() {
+        String identity = KojiSessionCache.passwordIdentity("builder", "secret");
+
+        assertFalse(identity.contains("secret"));
+        assertEquals(identity, KojiSessionCache.passwordIdentity("builder", "secret"));
+        assertFalse(identity.equals(KojiSessionCache.passwordIdentity("builder", "secret2")));
+    }
+}
@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class KojiSingleFlightTest {
+
+    private final KojiSingleFlight singleFlight = new KojiSingleFlight();
+
+    @Test
+    public void sharesCallInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final Object result = new Object();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> first = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return singleFlight.execute("key", new Callable<Object>() {
+                        public Object call() throws Exception {
+                            executions.incrementAndGet();
+                            started.countDown();
+                            release.await();
+                            return result;
+                        }
+                    });
+                }
+            });
+            started.await();
+            Future<Object> second = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return singleFlight.execute("key", new Callable<Object>() {
+                        public Object call() {
+                            executions.incrementAndGet();
+                            return new Object();
+                        }
+                    });
+                }
+            });
+            while (singleFlight.getCoalesced() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertSame(result, first.get(5, TimeUnit.SECONDS));
+            assertSame(result, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+            assertEquals(1, singleFlight.getExecuted());
+            assertEquals(0, singleFlight.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepsNothingOnceCompleted() throws XmlRpcException {
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Object> call = new Callable<Object>() {
+            public Object call() {
+                return executions.incrementAndGet();
+            }
+        };
+
+        assertEquals(1, singleFlight.execute("key", call));
+        assertEquals(2, singleFlight.execute("key", call));
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void passesFaultsThrough() {
+        try {
+            singleFlight.execute("key", new Callable<Object>() {
+                public Object call() throws XmlRpcException {
+                    throw new XmlRpcException(1000, "Invalid tagInfo");
+                }
+            });
+            fail("fault expected");
+        } catch (XmlRpcException e) {
+            assertEquals(1000, e.code);
+        }
+    }
+
+    @Test
+    public void sharesAnonymousCallsOfClients() throws Exception {
+        FakeKojiHub hub = new FakeKojiHub(0).setLatency(300, 300).start();
+        try {
+            callConcurrently(KojiClient.getKojiClient(hub.getURL()), KojiClient.getKojiClient(hub.getURL()));
+
+            assertEquals(1, hub.getCalls("getLastEvent"));
+        } finally {
+            KojiClientPool.remove(hub.getURL());
+            hub.stop();
+        }
+    }
+
+    @Test
+    public void doesNotShareCallsOfDifferentSessions() throws Exception {
+        FakeKojiHub hub = new FakeKojiHub(0).addUser("builder", "secret").start();
+        try {
+            KojiClient loggedIn = KojiClient.getKojiClient(hub.getURL());
+            loggedIn.login("builder", "secret");
+            hub.setLatency(300, 300);
+
+            callConcurrently(loggedIn, KojiClient.getKojiClient(hub.getURL()));
+
+            assertEquals(2, hub.getCalls("getLastEvent"));
+        } finally {
+            KojiClientPool.remove(hub.getURL());
+            hub.stop();
+        }
+    }
+
+    private static void callConcurrently(KojiClient... clients) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients.length);
+        try {
+            Future<?>[] calls = new Future<?>[clients.length];
+            for (int i = 0; i < clients.length; i++) {
+                final KojiClient koji = clients[i];
+                calls[i] = executor.submit(new Callable<Object>() {
+                    public Object call() throws XmlRpcException {
+                        return koji.getLastEvent();
+                    }
+                });
+            }
+            for (Future<?> call : calls) {
+                call.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
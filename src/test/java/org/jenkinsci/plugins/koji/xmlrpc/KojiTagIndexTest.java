@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class KojiTagIndexTest {
+
+    private static final String TAG = "tag-index-test";
+
+    private FakeKojiHub hub;
+    private KojiClient koji;
+    private KojiTagIndex index;
+    private final List<Integer> tagged = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        // builds 1 to 20
+        hub = new FakeKojiHub(0).setDataset(10, 2).setTags(TAG).start();
+        koji = KojiClient.getKojiClient(hub.getURL());
+        KojiBuildCache.getInstance().clear();
+        index = KojiTagIndex.forTag(hub.getURL(), TAG);
+        assertEquals(20, sync());
+    }
+
+    @After
+    public void tearDown() {
+        KojiTagIndex.remove(TAG);
+        KojiBuildCache.getInstance().clear();
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Test
+    public void quietTagCostsNoHistoryQuery() throws Exception {
+        assertEquals(0, sync());
+        assertEquals(20, index.size());
+        assertEquals(0, hub.getCalls("queryHistory"));
+    }
+
+    @Test
+    public void appliesChangesInEventOrder() throws Exception {
+        hub.untagBuild(TAG, 1);
+        hub.untagBuild(TAG, 2);
+        int retagged = hub.tagBuild(TAG, 1);
+
+        // the hub lists the retag of build 1 before its untag
+        assertEquals(3, sync());
+        assertEquals(Arrays.asList(1), ids(1, 2));
+        assertEquals(19, index.size());
+        assertEquals(retagged, index.getLastEvent());
+    }
+
+    @Test
+    public void untagAndRetagWithinOneSyncKeepsBuild() throws Exception {
+        hub.untagBuild(TAG, 5);
+        hub.tagBuild(TAG, 5);
+
+        assertEquals(2, sync());
+        assertEquals(Arrays.asList(5), ids(5));
+        assertEquals(20, index.size());
+        // tagged already at the previous sync
+        assertEquals(Collections.<Integer>emptyList(), tagged);
+    }
+
+    @Test
+    public void tagAndUntagWithinOneSyncDropsBuild() throws Exception {
+        hub.untagBuild(TAG, 3);
+        assertEquals(1, sync());
+        hub.tagBuild(TAG, 3);
+        hub.untagBuild(TAG, 3);
+
+        // one history row both created and revoked since the previous sync
+        assertEquals(2, sync());
+        assertEquals(Collections.<Integer>emptyList(), ids(3));
+        assertEquals(19, index.size());
+        assertEquals(Collections.<Integer>emptyList(), tagged);
+    }
+
+    @Test
+    public void reportsOnlyNewlyTaggedBuilds() throws Exception {
+        hub.untagBuild(TAG, 3);
+        hub.untagBuild(TAG, 4);
+        assertEquals(2, sync());
+        assertEquals(18, index.size());
+
+        hub.tagBuild(TAG, 4);
+        hub.tagBuild(TAG, 3);
+        hub.untagBuild(TAG, 6);
+        hub.tagBuild(TAG, 6);
+        sync();
+
+        assertEquals(Arrays.asList(4, 3), tagged);
+        assertEquals(20, index.size());
+    }
+
+    @Test
+    public void invalidatesCachedLatestBuildsOfChangedTag() throws Exception {
+        String pkg = FakeKojiHub.packageName(0);
+        koji.getLatestBuilds(TAG, pkg);
+        koji.getLatestBuilds(TAG, pkg);
+        assertEquals(1, hub.getCalls("getLatestBuilds"));
+
+        // a sync without changes keeps the cached lookup
+        assertEquals(0, sync());
+        koji.getLatestBuilds(TAG, pkg);
+        assertEquals(1, hub.getCalls("getLatestBuilds"));
+
+        hub.untagBuild(TAG, 2);
+        assertEquals(1, sync());
+        koji.getLatestBuilds(TAG, pkg);
+        assertEquals(2, hub.getCalls("getLatestBuilds"));
+    }
+
+    private int sync() throws XmlRpcException {
+        return index.sync(koji, koji.getLastEvent(), new KojiClient.BuildHandler() {
+            public void handleBuild(KojiBuild build) {
+                tagged.add(build.getId());
+            }
+        });
+    }
+
+    /**
+     * @return Those of the given build ids currently in the index.
+     */
+    private List<Integer> ids(Integer... buildIds) {
+        List<Integer> present = new ArrayList<Integer>();
+        for (KojiBuild build : index.getBuilds()) {
+            if (Arrays.asList(buildIds).contains(build.getId())) {
+                present.add(build.getId());
+            }
+        }
+        return present;
+    }
+}
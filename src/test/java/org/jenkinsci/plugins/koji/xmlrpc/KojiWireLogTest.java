@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KojiWireLogTest {
+
+    private final KojiWireLog wireLog = KojiWireLog.getInstance();
+
+    private FakeKojiHub hub;
+    private KojiClient koji;
+    private KojiClientPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeKojiHub(0).start();
+        koji = KojiClient.getKojiClient(hub.getURL());
+        pool = KojiClientPool.forHub(hub.getURL());
+        wireLog.clear();
+    }
+
+    @After
+    public void tearDown() {
+        wireLog.clear();
+        KojiClientPool.remove(hub.getURL());
+        hub.stop();
+    }
+
+    @Test
+    public void capturesRequestAndResponse() throws Exception {
+        pool.setDebug(true);
+        koji.getLastEvent();
+
+        List<KojiWireLog.Entry> entries = wireLog.getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("getLastEvent", entries.get(0).getMethodName());
+        assertTrue(entries.get(0).getRequest(), entries.get(0).getRequest().contains("<methodName>getLastEvent</methodName>"));
+        assertTrue(entries.get(0).getResponse(), entries.get(0).getResponse().contains("<name>id</name>"));
+    }
+
+    @Test
+    public void clientLentWhileDebugIsSwitchedOffIsNotReused() throws Exception {
+        pool.setDebug(true);
+        XmlRpcClient client = pool.borrow();
+        pool.setDebug(false);
+        pool.release(client);
+
+        koji.getLastEvent();
+
+        assertEquals(0, wireLog.getEntries().size());
+    }
+}
@@ -0,0 +1,147 @@
+package org.jenkinsci.plugins.koji.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MyTypeFactoryTest {
+
+    private static final String TWO_STRUCTS = response("<array><data>"
+            + "<value><struct><member><name>id</name><value><int>1</int></value></member>"
+            + "<member><name>tags</name><value><array><data><value>a</value><value>b</value></data></array></value></member>"
+            + "</struct></value>"
+            + "<value><struct><member><name>id</name><value><int>2</int></value></member>"
+            + "<member><name>epoch</name><value><nil/></value></member></struct></value>"
+            + "</data></array>");
+
+    @Test
+    public void collectsArrayWithoutHandler() throws Exception {
+        Object[] result = (Object[]) parse(TWO_STRUCTS, null, null);
+
+        assertEquals(2, result.length);
+        assertEquals(1, ((Map<?, ?>) result[0]).get("id"));
+        assertNull(((Map<?, ?>) result[1]).get("epoch"));
+    }
+
+    @Test
+    public void streamsElementsOfTopLevelArray() throws Exception {
+        final List<Object> elements = new ArrayList<Object>();
+        Object[] result = (Object[]) parse(TWO_STRUCTS, null, new MyTypeFactory.ElementHandler() {
+            public void handleElement(Object element) {
+                elements.add(element);
+            }
+        });
+
+        assertEquals(0, result.length);
+        assertEquals(2, elements.size());
+        assertEquals(2, ((Map<?, ?>) elements.get(1)).get("id"));
+        // nested arrays are kept whole
+        Object[] tags = (Object[]) ((Map<?, ?>) elements.get(0)).get("tags");
+        assertEquals(2, tags.length);
+    }
+
+    @Test
+    public void mapsStructsOfTopLevelArray() throws Exception {
+        Object[] result = (Object[]) parse(TWO_STRUCTS, KojiBuild.MAPPER, null);
+
+        assertEquals(2, result.length);
+        assertEquals(2, ((KojiBuild) result[1]).getId());
+    }
+
+    @Test
+    public void mapsTopLevelStruct() throws Exception {
+        KojiBuild build = (KojiBuild) parse(response("<struct><member><name>id</name><value><int>7</int></value></member>"
+                + "<member><name>name</name><value>pkg</value></member>"
+                + "<member><name>version</name><value>1.0</value></member>"
+                + "<member><name>release</name><value>1</value></member></struct>"), KojiBuild.MAPPER, null);
+
+        assertEquals(7, build.getId());
+        assertEquals("pkg-1.0-1", build.getNvr());
+    }
+
+    @Test
+    public void reportsFaultOfMappedCall() throws Exception {
+        String fault = "<?xml version=\"1.0\"?><methodResponse><fault><value><struct>"
+                + "<member><name>faultCode</name><value><int>1002</int></value></member>"
+                + "<member><name>faultString</name><value>Not logged in</value></member>"
+                + "</struct></value></fault></methodResponse>";
+        try {
+            parse(fault, KojiBuild.MAPPER, null);
+            fail("fault expected");
+        } catch (XmlRpcException e) {
+            assertEquals(1002, e.code);
+            assertEquals("Not logged in", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reportsHubFaultOfTypedCall() throws Exception {
+        FakeKojiHub hub = new FakeKojiHub(0).start();
+        try {
+            KojiClient koji = KojiClient.getKojiClient(hub.getURL());
+            koji.getLatestBuilds("no-such-tag", FakeKojiHub.packageName(0));
+            fail("fault expected");
+        } catch (XmlRpcException e) {
+            assertEquals(FakeKojiHub.FAULT_GENERIC, e.code);
+        } finally {
+            KojiClientPool.remove(hub.getURL());
+            hub.stop();
+        }
+    }
+
+    @Test
+    public void streamsListTaggedFromHub() throws Exception {
+        FakeKojiHub hub = new FakeKojiHub(0).setDataset(50, 3).start();
+        try {
+            KojiClient koji = KojiClient.getKojiClient(hub.getURL());
+            final List<KojiBuild> builds = new ArrayList<KojiBuild>();
+            int count = koji.listTaggedBuilds(new KojiClient.BuildParamsBuilder().setTag(FakeKojiHub.DEFAULT_TAG).build(),
+                    new KojiClient.BuildHandler() {
+                        public void handleBuild(KojiBuild build) {
+                            builds.add(build);
+                        }
+                    });
+
+            assertEquals(150, count);
+            assertEquals(150, builds.size());
+            assertTrue(builds.get(0).getNvr().startsWith(FakeKojiHub.packageName(0)));
+        } finally {
+            KojiClientPool.remove(hub.getURL());
+            hub.stop();
+        }
+    }
+
+    static String response(String value) {
+        return "<?xml version=\"1.0\"?><methodResponse><params><param><value>" + value
+                + "</value></param></params></methodResponse>";
+    }
+
+    /**
+     * Parses a response the way KojiTransportFactory does, with the given expectations set for this thread.
+     */
+    static Object parse(String response, MyTypeFactory.StructMapper mapper, MyTypeFactory.ElementHandler handler)
+            throws Exception {
+        XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+        config.setEnabledForExtensions(true);
+        if (mapper != null || handler != null) {
+            MyTypeFactory.expectResponse(mapper, handler);
+        }
+        try {
+            return KojiResponseParser.parse(config, new MyTypeFactory(new XmlRpcClient()),
+                    new ByteArrayInputStream(response.getBytes("UTF-8")));
+        } finally {
+            MyTypeFactory.clearResponse();
+        }
+    }
+}
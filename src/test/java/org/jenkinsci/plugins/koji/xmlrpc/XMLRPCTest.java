@@ -13,6 +13,10 @@ import java.util.Map;
  * dependencies required to run this class.
  *
  * This also has advantage, that KojiClient API is used from other consumer point, validating the desing of KojiClient.
+ *
+ * Without arguments the tests run against an in-process FakeKojiHub, pass a hub URL to test against a real one.
+ *
+ * Usage: XMLRPCTest [hubURL]
  */
 public class XMLRPCTest {
 
@@ -24,15 +28,15 @@ public class XMLRPCTest {
     /**
      * Test build
      */
-    private final String build = "classworlds-classworlds-1.1_alpha_2-1";
+    private final String build;
     /**
      * Test package
      */
-    private final String pkg = "classworlds-classworlds";
+    private final String pkg;
     /**
      * Test tag
      */
-    private final String tag = "mead-import-maven-all";
+    private final String tag;
 
     /**
      * Logger instance
@@ -43,12 +47,25 @@ public class XMLRPCTest {
      * As described above, this class is used for out of container testing only.
      * @param args
      */
-    public static void main(String[] args) {
-//        String kojiInstanceURL = "http://koji.fedoraproject.org/kojihub";
-        String kojiInstanceURL = "http://koji.localdomain/kojihub";
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+//            String kojiInstanceURL = "http://koji.fedoraproject.org/kojihub";
+            String kojiInstanceURL = args[0];
+
+            XMLRPCTest kojiTest = new XMLRPCTest(kojiInstanceURL, "mead-import-maven-all", "classworlds-classworlds",
+                    "classworlds-classworlds-1.1_alpha_2-1");
+            kojiTest.executeTests();
+            return;
+        }
 
-        XMLRPCTest kojiTest = new XMLRPCTest(kojiInstanceURL);
-        kojiTest.executeTests();
+        FakeKojiHub hub = new FakeKojiHub(0).start();
+        try {
+            XMLRPCTest kojiTest = new XMLRPCTest(hub.getURL(), FakeKojiHub.DEFAULT_TAG, FakeKojiHub.packageName(0),
+                    hub.getNvr(0, 1));
+            kojiTest.executeTests();
+        } finally {
+            hub.stop();
+        }
     }
 
     /**
@@ -74,8 +91,14 @@ public class XMLRPCTest {
     /**
      * Sets the Koji Client for debugging.
      * @param kojiInstanceURL
+     * @param tag Test tag
+     * @param pkg Test package, tagged into the tag.
+     * @param build Test build NVR
      */
-    public XMLRPCTest(String kojiInstanceURL) {
+    public XMLRPCTest(String kojiInstanceURL, String tag, String pkg, String build) {
+        this.tag = tag;
+        this.pkg = pkg;
+        this.build = build;
         initLogger();
 
         try {
@@ -94,14 +117,12 @@ public class XMLRPCTest {
         testKojiHello();
 
         testLogin();
-        KojiClient.BuildParams buildParams = new KojiClient.BuildParamsBuilder().setTag(tag).setPackage(pkg).setLatest(true).build();
-//        koji.listTaggedBuilds(buildParams);
 
-//        System.out.println(koji.getSession());
-//
-//        testGetLatestBuilds();
-//
-//        testGeBuildInfo();
+        testListTaggedBuilds();
+
+        testGetLatestBuilds();
+
+        testGeBuildInfo();
     }
 
     /**
@@ -148,7 +169,7 @@ public class XMLRPCTest {
     private void testListTaggedBuilds() {
 
         KojiClient.BuildParams buildParams = new KojiClient.BuildParamsBuilder().setTag(tag).setPackage(pkg).setLatest(true).build();
-        List<Map<String, String>> results = null;
+        List<KojiBuild> results = null;
         try {
             results = koji.listTaggedBuilds(buildParams);
         } catch (XmlRpcException e) {
@@ -160,8 +181,8 @@ public class XMLRPCTest {
                 e.printStackTrace();
         }
 
-        for (Map<String, String> map : results) {
-            printMap(map);
+        for (KojiBuild result : results) {
+            System.out.println(result.toDetailedString());
         }
 
     }
@@ -170,25 +191,25 @@ public class XMLRPCTest {
      * Test build info.
      */
     private void testGeBuildInfo() {
-        Map<String, String> buildInfo = null;
+        KojiBuild buildInfo = null;
         try {
             buildInfo = koji.getBuildInfo(build);
         } catch (XmlRpcException e) {
-            if (e.getMessage() == "empty") {
-                System.out.println("No build with id=" + build + " found in the database.");
-                return;
-            }
-            else
-                e.printStackTrace();
+            e.printStackTrace();
+            return;
+        }
+        if (buildInfo == null) {
+            System.out.println("No build with id=" + build + " found in the database.");
+            return;
         }
-        printMap(buildInfo);
+        System.out.println(buildInfo.toDetailedString());
     }
 
     /**
      * Test simpler query.
      */
     private void testGetLatestBuilds() {
-        Map<String, String> result = null;
+        KojiBuild result = null;
 
         try {
             result = koji.getLatestBuilds(tag, pkg);
@@ -202,7 +223,7 @@ public class XMLRPCTest {
                 return;
             }
         }
-        printMap(result);
+        System.out.println(result.toDetailedString());
     }
 
 }